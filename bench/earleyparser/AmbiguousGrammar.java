@@ -0,0 +1,45 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ * 
+ * AmbiguousGrammar
+ *   A synthetic grammar for the benchmarks. Any sentence of n words "a" has 
+ *   as many parse trees as there are binary trees with n leaves (the 
+ *   Catalan numbers), which makes it the worst case for tree extraction.
+ * 
+ *   S    -> S S
+ *   S    -> Word
+ *   Word -> a
+ * 
+ *****************************************************************************/
+
+package earleyparser;
+
+public class AmbiguousGrammar extends Grammar
+{
+	public AmbiguousGrammar()
+	{
+		super();
+		initRules();
+		initPOS();
+	}
+
+	private void initRules()
+	{
+		// S -> S S
+		// S -> Word
+		String[] s1 = { "S", "S" };
+		String[] s2 = { "Word" };
+		RHS[] sRHS = { new RHS(s1), new RHS(s2) };
+		Rules.put("S", sRHS);
+
+		// Word -> a
+		String[] word = { "a" };
+		RHS[] wordRHS = { new RHS(word) };
+		Rules.put("Word", wordRHS);
+	}
+
+	private void initPOS()
+	{
+		POS.add("Word");
+	}
+}
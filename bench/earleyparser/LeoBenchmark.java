@@ -0,0 +1,63 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * LeoBenchmark
+ *   A JMH benchmark of EarleyParser.parse() with Leo's optimisation, on the
+ *   same grammars and lengths as RecognitionBenchmark. Leo's optimisation
+ *   is only used when the charts are kept as STATES, so this is compared
+ *   with STATES there:
+ *
+ *     java -jar target/bench/benchmarks.jar "RecognitionBenchmark|LeoBenchmark" -p storage=STATES
+ *
+ *****************************************************************************/
+
+package earleyparser;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeoBenchmark
+{
+	@Param({ "simple", "new", "crab", "ambiguous", "right" })
+	public String grammar;
+
+	@Param({ "8", "16", "32", "64" })
+	public int length;
+
+	private EarleyParser parser;
+	private String[] sentence;
+
+	@Setup
+	public void setup()
+	{
+		parser = new EarleyParser(Workloads.grammar(grammar));
+		parser.setLeo(true);
+		sentence = Workloads.sentence(grammar, length);
+
+		if ( ! parser.parse(sentence).isAccepted() )
+			throw new IllegalStateException("Sentence is not accepted");
+	}
+
+	@Benchmark
+	public ParseContext parse()
+	{
+		return parser.parse(sentence);
+	}
+}
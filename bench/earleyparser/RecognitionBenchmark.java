@@ -0,0 +1,77 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ * 
+ * RecognitionBenchmark
+ *   A JMH benchmark of EarleyParser.parse(), which builds the charts and 
+ *   decides if the sentence has a parse. Tree extraction is measured apart 
+ *   from it in TreeBenchmark.
+ * 
+ *   Every grammar of Workloads is run at several sentence lengths, so a 
+ *   change in how the cost grows with the length shows up as well as a 
+ *   change in the cost itself. Each is run with every storage of the 
+ *   charts. Leo's optimisation is only used with STATES, so it is measured
+ *   apart in LeoBenchmark. Throughput and the distribution of the time per
+ *   parse are both reported. Run with the GC profiler to also get the 
+ *   allocation rate and the bytes allocated per parse:
+ * 
+ *     mvn -f bench/pom.xml package
+ *     java -jar target/bench/benchmarks.jar RecognitionBenchmark -prof gc
+ * 
+ *   bench/pom.xml builds the benchmarks together with src/, with JMH.
+ * 
+ *****************************************************************************/
+
+package earleyparser;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecognitionBenchmark
+{
+	@Param({ "simple", "new", "crab", "ambiguous", "right" })
+	public String grammar;
+
+	@Param({ "8", "16", "32", "64" })
+	public int length;
+
+	// How the charts are kept.
+	@Param({ "STATES", "COLUMNS", "OFF_HEAP", "RECOGNIZE" })
+	public String storage;
+
+	private EarleyParser parser;
+	private String[] sentence;
+
+	@Setup
+	public void setup()
+	{
+		parser = new EarleyParser(Workloads.grammar(grammar));
+		parser.setStorage(EarleyParser.Storage.valueOf(storage));
+		sentence = Workloads.sentence(grammar, length);
+
+		if ( ! parser.parse(sentence).isAccepted() )
+			throw new IllegalStateException("Sentence is not accepted");
+	}
+
+	@Benchmark
+	public ParseContext parse()
+	{
+		return parser.parse(sentence);
+	}
+}
@@ -0,0 +1,46 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ * 
+ * RightRecursiveGrammar
+ *   A synthetic grammar for the benchmarks. Every sentence of n words "a" 
+ *   has exactly one parse tree, but the tree is a chain of n right-recursive
+ *   rules. Without special handling, every word completes every level of 
+ *   the chain again, so the charts grow quadratically.
+ * 
+ *   S    -> Word S
+ *   S    -> Word
+ *   Word -> a
+ * 
+ *****************************************************************************/
+
+package earleyparser;
+
+public class RightRecursiveGrammar extends Grammar
+{
+	public RightRecursiveGrammar()
+	{
+		super();
+		initRules();
+		initPOS();
+	}
+
+	private void initRules()
+	{
+		// S -> Word S
+		// S -> Word
+		String[] s1 = { "Word", "S" };
+		String[] s2 = { "Word" };
+		RHS[] sRHS = { new RHS(s1), new RHS(s2) };
+		Rules.put("S", sRHS);
+
+		// Word -> a
+		String[] word = { "a" };
+		RHS[] wordRHS = { new RHS(word) };
+		Rules.put("Word", wordRHS);
+	}
+
+	private void initPOS()
+	{
+		POS.add("Word");
+	}
+}
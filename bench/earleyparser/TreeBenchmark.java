@@ -0,0 +1,92 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ * 
+ * TreeBenchmark
+ *   A JMH benchmark of getting the parse trees out of charts that have 
+ *   already been built. The sentence is parsed once, in the setup, so only 
+ *   the extraction is measured:
+ * 
+ *     getTree     ParseTree.getTree(), every tree at once
+ *     forest      building the ParseForest
+ *     firstTree   building the ParseForest and its first tree
+ *     allTrees    building the ParseForest and listing every tree
+ * 
+ *   The number of trees grows exponentially with the length for the 
+ *   ambiguous grammars, so the lengths are much shorter than in the 
+ *   RecognitionBenchmark. Run with -prof gc for the allocation rate, as 
+ *   described there.
+ * 
+ *****************************************************************************/
+
+package earleyparser;
+
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmark
+{
+	@Param({ "simple", "new", "crab", "ambiguous", "right" })
+	public String grammar;
+
+	@Param({ "3", "4", "5", "6" })
+	public int length;
+
+	private Grammar g;
+	private ParseContext context;
+
+	@Setup
+	public void setup()
+	{
+		g = Workloads.grammar(grammar);
+		context = new EarleyParser(g).parse(Workloads.sentence(grammar, length));
+
+		if ( ! context.isAccepted() )
+			throw new IllegalStateException("Sentence is not accepted");
+	}
+
+	@Benchmark
+	public Vector<ParseTree> getTree()
+	{
+		return ParseTree.getTree(g, context.getCharts());
+	}
+
+	@Benchmark
+	public ParseForest forest()
+	{
+		return context.getForest();
+	}
+
+	@Benchmark
+	public ParseTree firstTree()
+	{
+		return context.getForest().iterator().next();
+	}
+
+	@Benchmark
+	public void allTrees(Blackhole bh)
+	{
+		Iterator<ParseTree> it = context.getForest().iterator();
+		while ( it.hasNext() )
+			bh.consume(it.next());
+	}
+}
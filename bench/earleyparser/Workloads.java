@@ -0,0 +1,87 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ * 
+ * Workloads
+ *   The grammars and sentences the benchmarks are run on. A sentence of any
+ *   length is made for each grammar by repeating a phrase the grammar 
+ *   accepts, so the cost can be followed as the sentences get longer.
+ * 
+ *   simple     SimpleGrammar          John called Mary (from Denver)*
+ *   new        NewGrammar             John (and Mary)* like dogs
+ *   crab       CrabGrammar            wang fanyi (zai xiaoshuo)* fanyi xiaoshuo
+ *   ambiguous  AmbiguousGrammar       a a a ...
+ *   right      RightRecursiveGrammar  a a a ...
+ * 
+ *   The sentence is the shortest one of this form with at least the asked 
+ *   for number of words.
+ * 
+ *****************************************************************************/
+
+package earleyparser;
+
+import java.util.Vector;
+
+public class Workloads
+{
+	public static Grammar grammar(String name)
+	{
+		if ( name.equals("simple") )
+			return new SimpleGrammar();
+		if ( name.equals("new") )
+			return new NewGrammar();
+		if ( name.equals("crab") )
+			return new CrabGrammar();
+		if ( name.equals("ambiguous") )
+			return new AmbiguousGrammar();
+		if ( name.equals("right") )
+			return new RightRecursiveGrammar();
+
+		throw new IllegalArgumentException("Unknown grammar: " + name);
+	}
+
+	public static String[] sentence(String name, int length)
+	{
+		if ( name.equals("simple") )
+			return repeat(new String[] { "John", "called", "Mary" },
+						  new String[] { "from", "Denver" },
+						  new String[0], length);
+		if ( name.equals("new") )
+			return repeat(new String[] { "John" },
+						  new String[] { "and", "Mary" },
+						  new String[] { "like", "dogs" }, length);
+		if ( name.equals("crab") )
+			return repeat(new String[] { "wang", "fanyi" },
+						  new String[] { "zai", "xiaoshuo" },
+						  new String[] { "fanyi", "xiaoshuo" }, length);
+		if ( name.equals("ambiguous") || name.equals("right") )
+			return repeat(new String[0], new String[] { "a" },
+						  new String[0], length);
+
+		throw new IllegalArgumentException("Unknown grammar: " + name);
+	}
+
+	/**************************************************************************
+	 * repeat()
+	 *   Put the middle between the first and the last as many times as it 
+	 *   takes to reach the length. The middle is there at least once.
+	 *************************************************************************/
+	private static String[] repeat(String[] first, String[] middle, 
+								   String[] last, int length)
+	{
+		Vector<String> words = new Vector<String>();
+		for ( int i = 0; i < first.length; i++ )
+			words.add(first[i]);
+
+		do
+		{
+			for ( int i = 0; i < middle.length; i++ )
+				words.add(middle[i]);
+		}
+		while ( words.size() + last.length < length );
+
+		for ( int i = 0; i < last.length; i++ )
+			words.add(last[i]);
+
+		return words.toArray(new String[words.size()]);
+	}
+}
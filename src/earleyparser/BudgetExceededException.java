@@ -0,0 +1,28 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * BudgetExceededException
+ *   Thrown when a parse, or the listing of its trees, goes over a limit of
+ *   its ParseBudget. A ParseContext catches it and remembers the limit;
+ *   only ParseTree.getTree() with a budget lets it through to the caller.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+public class BudgetExceededException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	private ParseBudget.Limit limit;
+
+	public BudgetExceededException(ParseBudget.Limit limit)
+	{
+		super("Parse budget exceeded: " + limit);
+		this.limit = limit;
+	}
+
+	public ParseBudget.Limit getLimit()
+	{
+		return limit;
+	}
+}
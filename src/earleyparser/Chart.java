@@ -6,22 +6,76 @@
  *   The Chart class maintains the states contained at each level of the 
  *   parsing. It contains a vector that does not contain duplicates states. 
  *   If additional behavior was needed in the Chart for parsing, this would
- *   be a potential place to add it. Right now, it combines sources of states
- *   that would have been duplicates. By combining the sources of the states 
- *   we can trace all possible ways back throught the parse trees.
+ *   be a potential place to add it. Right now, it combines back-pointers of 
+ *   states that would have been duplicates. By combining the back-pointers
+ *   of the states we can trace all possible ways back throught the parse 
+ *   trees.
+ * 
+ *   The vector keeps the states in the order they were added, which is the
+ *   order the parser works through them. Alongside it a hash index maps each
+ *   state to itself, so finding a duplicate does not scan the whole chart.
+ *   The chart also keeps, for every symbol, the states that are waiting on
+ *   that symbol (the symbol is just after their dot). The completer only 
+ *   needs to look at those. Likewise it keeps the completed states for 
+ *   every LHS, which is what the ParseForest is built from.
+ * 
+ *   The chart remembers which symbols have been predicted in it, so each 
+ *   symbol's rules are only added once. Predicted states have no 
+ *   back-pointers, since nothing is before their dot.
+ * 
+ *   When the parser uses Leo's optimisation, the chart also remembers its 
+ *   LeoItems, and the completions that skipped states through one, so the 
+ *   skipped states can be put back by expandLeo() before trees are built.
  * 
  *****************************************************************************/
 package earleyparser;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Vector;
 
 public class Chart
 {
 	Vector<State> chart;
 
-	public Chart()
+	// Maps every state in the chart to itself. States are hashed on their
+	//  rule, dot, i and j, so a duplicate finds the original directly.
+	HashMap<State, State> index;
+
+	// The states waiting on each symbol, indexed by the symbol id. The list
+	//  for a symbol is only created once a state waits on it.
+	ArrayList<State>[] waiting;
+
+	// The completed states (the dot is last) for each LHS, indexed by the 
+	//  symbol id. The list for a symbol is only created once it is needed.
+	ArrayList<State>[] completed;
+
+	// True for the symbols whose rules have been predicted in this chart.
+	boolean[] predicted;
+
+	// The LeoItem of each symbol, indexed by the symbol id, once it has been
+	//  worked out. Only created if the parser uses Leo's optimisation.
+	LeoItem[] leo;
+
+	// The completions into this chart that went through a LeoItem: the 
+	//  LeoItem and the completed state that was given to it.
+	ArrayList<LeoItem> leoItems;
+	ArrayList<State> leoChildren;
+
+	// The grammar whose rules the states refer to.
+	CompiledGrammar grammar;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public Chart(CompiledGrammar g)
 	{
 		chart = new Vector<State>();
+		index = new HashMap<State, State>();
+		waiting = new ArrayList[g.getSymbolCount()];
+		completed = new ArrayList[g.getSymbolCount()];
+		predicted = new boolean[g.getSymbolCount()];
+		grammar = g;
 	}
 
 	public int size()
@@ -32,22 +86,40 @@ public class Chart
 	/**************************************************************************
 	 * addState()
 	 *   Attempt to add the state. After this call, the state is guaranteed to 
-	 * 	 be in this chart.
+	 * 	 be in this chart. Return true if it was not in the chart before.
 	 *************************************************************************/
-	public void addState(State s)
+	public boolean addState(State s)
 	{
-		// If the state is already in the chart, we take the sources from the
-		//  state passed in and add them to the state in the chart. This will 
-		//  enable us to find all of the parse trees that were produced.
-		if ( chart.contains(s) )
+		// If the state is already in the chart, we take the back-pointers 
+		//  from the state passed in and add them to the state in the chart.
+		//  This will enable us to find all of the parse trees that were 
+		//  produced.
+		State orig = index.get(s);
+		if ( orig != null )
 		{
-			int i = chart.indexOf(s);
-			State orig = (State) chart.get(i);
-			orig.addSources(s);
+			orig.addBackPointers(s);
+			return false;
 		}
 		else
 		{
+			index.put(s, s);
 			chart.add(s);
+
+			int next = grammar.getAfterDot(s.getRule(), s.getDot());
+			if ( next >= 0 )
+			{
+				if ( waiting[next] == null )
+					waiting[next] = new ArrayList<State>();
+				waiting[next].add(s);
+			}
+			else
+			{
+				int lhs = grammar.getLHS(s.getRule());
+				if ( completed[lhs] == null )
+					completed[lhs] = new ArrayList<State>();
+				completed[lhs].add(s);
+			}
+			return true;
 		}
 	}
 
@@ -60,7 +132,125 @@ public class Chart
 		if ( i < 0 || i >= chart.size() )
 			return null;
 
-		return (State) chart.get(i);
+		return chart.get(i);
+	}
+
+	/**************************************************************************
+	 * getState()
+	 *   Return the state in this chart that is equal to s, or null if there 
+	 *   is no such state.
+	 *************************************************************************/
+	public State getState(State s)
+	{
+		return index.get(s);
+	}
+
+	/**************************************************************************
+	 * getWaiting()
+	 *   Return the states of this chart that have the symbol just after their
+	 *   dot, in the order they were added. The list grows as states are added.
+	 *************************************************************************/
+	public List<State> getWaiting(int symbol)
+	{
+		if ( waiting[symbol] == null )
+			return Collections.emptyList();
+		return waiting[symbol];
+	}
+
+	/**************************************************************************
+	 * getCompleted()
+	 *   Return the states of this chart that have the symbol as their LHS and
+	 *   the dot last, in the order they were added.
+	 *************************************************************************/
+	public List<State> getCompleted(int symbol)
+	{
+		if ( completed[symbol] == null )
+			return Collections.emptyList();
+		return completed[symbol];
+	}
+
+	/**************************************************************************
+	 * isPredicted()
+	 *   True if the rules of the symbol have already been predicted in this
+	 *   chart.
+	 *************************************************************************/
+	public boolean isPredicted(int symbol)
+	{
+		return predicted[symbol];
+	}
+
+	void setPredicted(int symbol)
+	{
+		predicted[symbol] = true;
+	}
+
+	public CompiledGrammar getGrammar()
+	{
+		return grammar;
+	}
+
+	/**************************************************************************
+	 * getLeo()
+	 *   Return the LeoItem of the symbol, LeoItem.NONE if it has none, or null
+	 *   if it has not been worked out yet.
+	 *************************************************************************/
+	LeoItem getLeo(int symbol)
+	{
+		if ( leo == null )
+			return null;
+		return leo[symbol];
+	}
+
+	void setLeo(int symbol, LeoItem l)
+	{
+		if ( leo == null )
+			leo = new LeoItem[grammar.getSymbolCount()];
+		leo[symbol] = l;
+	}
+
+	/**************************************************************************
+	 * addLeoCompletion()
+	 *   Remember that the completed state child was completed into this chart
+	 *   through the LeoItem l, skipping the states on its chain.
+	 *************************************************************************/
+	void addLeoCompletion(LeoItem l, State child)
+	{
+		if ( leoItems == null )
+		{
+			leoItems = new ArrayList<LeoItem>();
+			leoChildren = new ArrayList<State>();
+		}
+		leoItems.add(l);
+		leoChildren.add(child);
+	}
+
+	/**************************************************************************
+	 * expandLeo()
+	 *   Add the states that completions through LeoItems skipped, exactly as
+	 *   the completer would have added them, with their back-pointers. j must be 
+	 *   the index of this chart. The skipped states are all complete and 
+	 *   only ever advance the next state of their chain, so adding them late
+	 *   changes nothing else in this chart or the charts after it.
+	 *************************************************************************/
+	void expandLeo(int j)
+	{
+		if ( leoItems == null )
+			return;
+
+		for ( int a = 0; a < leoItems.size(); a++ )
+		{
+			State child = leoChildren.get(a);
+			for ( LeoItem l = leoItems.get(a); l != null; l = l.next )
+			{
+				State w = l.waiting;
+				State ns = new State(w.getRule(), w.getDot() + 1, w.getI(), j, w, child);
+				addState(ns);
+				child = getState(ns);
+			}
+		}
+
+		leoItems = null;
+		leoChildren = null;
 	}
 
 	/**************************************************************************
@@ -74,7 +264,11 @@ public class Chart
 		StringBuffer out = new StringBuffer();
 
 		for ( int i = 0; i < chart.size(); i++ )
-			out.append((State) chart.get(i) + "\n");
+		{
+			State s = chart.get(i);
+			out.append(grammar.toString(s.getRule(), s.getDot()));
+			out.append("\t[" + s.getI() + ", " + s.getJ() + "]\n");
+		}
 
 		return out.toString();
 	}
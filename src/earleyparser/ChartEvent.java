@@ -0,0 +1,32 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * ChartEvent
+ *   A JDK Flight Recorder event for finishing one chart. Its duration is the
+ *   time close() took. It is only filled in and committed while a recording
+ *   has the event enabled.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("earleyparser.Chart")
+@Label("Earley Chart")
+@Category("Earley Parser")
+@Description("One chart of a parse was finished")
+class ChartEvent extends Event
+{
+	@Label("Chart")
+	int index;
+
+	@Label("States")
+	int states;
+
+	@Label("Words Pushed")
+	int words;
+}
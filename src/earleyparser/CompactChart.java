@@ -0,0 +1,416 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * CompactChart
+ *   The CompactChart holds the same states as a Chart, but as columns of
+ *   ints instead of State objects: a state is only its number in the chart,
+ *   and its rule, dot and origin (i) are ints in three IntColumns. Its j is
+ *   the chart it is in.
+ *
+ *   The columns are not the chart's own. A parse adds the states of its
+ *   charts strictly one chart after the other, so all of its charts share
+ *   one Columns, on the heap or off it, and each chart is a run of states
+ *   in it. The k-th state of a chart is the (first + k)-th in the columns.
+ *   Taking the last charts away just shortens the columns.
+ *
+ *   The sources of a state are kept as back-pointers in two more columns.
+ *   A state that was moved over a symbol by a completed state (the child)
+ *   points to the child, which is in the same chart. The state that was
+ *   moved (the predecessor) is not kept: it has the same rule and origin
+ *   and the dot one back, in the chart of the child's origin, so find()
+ *   gives it. A state moved over a nullable symbol without a child points
+ *   to its predecessor in the same chart instead, stored as ~predecessor so
+ *   it is negative. Scanned words have no back-pointers. The back-pointers
+ *   of a state are a linked list through the link column. Columns made 
+ *   without back-pointers, for a parse that only recognizes the sentence, 
+ *   have none of these three columns, and addLink() does nothing.
+ *
+ *   Like a Chart, a CompactChart lists the states waiting on each symbol and
+ *   the completed states of each LHS, in the order they were added, and
+ *   remembers the symbols it has predicted. Every state is on exactly one
+ *   of these lists, so one column of next states is enough for all of them.
+ *   The ends of the lists are kept only for the symbols the chart has seen,
+ *   in a small hash table, and the states are found by a hash table of
+ *   their numbers. Both are plain int arrays of the chart's own.
+ *
+ *   toChart() turns it into a Chart, with State objects and their 
+ *   back-pointers, when the trees or the forest are wanted.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import java.util.Arrays;
+
+class CompactChart
+{
+	/**************************************************************************
+	 * Columns
+	 *   The columns of the states and back-pointers of all of the charts of
+	 *   one parse. The back-pointer columns are null if there are none.
+	 *************************************************************************/
+	static class Columns
+	{
+		// The rule, dot and origin of every state, the next state on the same
+		//  waiting or completed list, and the first back-pointer of the state.
+		IntColumn rules;
+		IntColumn dots;
+		IntColumn origins;
+		IntColumn nexts;
+		IntColumn links;
+		int size;
+
+		// The child, or ~predecessor, and the next back-pointer of the same
+		//  state of every back-pointer.
+		IntColumn linkSource;
+		IntColumn linkNext;
+		int linkCount;
+
+		Columns(boolean offHeap)
+		{
+			this(offHeap, true);
+		}
+
+		Columns(boolean offHeap, boolean backPointers)
+		{
+			rules = new IntColumn(offHeap, CAPACITY);
+			dots = new IntColumn(offHeap, CAPACITY);
+			origins = new IntColumn(offHeap, CAPACITY);
+			nexts = new IntColumn(offHeap, CAPACITY);
+			if ( backPointers )
+			{
+				links = new IntColumn(offHeap, CAPACITY);
+				linkSource = new IntColumn(offHeap, CAPACITY);
+				linkNext = new IntColumn(offHeap, CAPACITY);
+			}
+		}
+
+		/**********************************************************************
+		 * bytes()
+		 *   The bytes the columns take up, used or not.
+		 *********************************************************************/
+		long bytes()
+		{
+			long b = rules.bytes() + dots.bytes() + origins.bytes() + nexts.bytes();
+			if ( links != null )
+				b += links.bytes() + linkSource.bytes() + linkNext.bytes();
+			return b;
+		}
+	}
+
+	// The states the columns have room for before they grow.
+	final static private int CAPACITY = 1024;
+
+	// The fields of a symbol in the symbol table, and how many there are.
+	final static private int KEY = 0;
+	final static private int WAITING_HEAD = 1;
+	final static private int WAITING_TAIL = 2;
+	final static private int COMPLETED_HEAD = 3;
+	final static private int COMPLETED_TAIL = 4;
+	final static private int PREDICTED = 5;
+	final static private int FIELDS = 6;
+
+	private CompiledGrammar grammar;
+	private Columns columns;
+
+	// The first state and back-pointer of this chart in the columns, and the
+	//  number of states in it.
+	private int first;
+	private int firstLink;
+	private int size;
+
+	// The states, hashed on their rule, dot and origin. A slot holds the
+	//  state's number plus one, or 0 if it is empty.
+	private int[] table;
+
+	// The symbols seen, hashed on their id, FIELDS ints each. KEY holds the
+	//  symbol plus one, or 0 if the slot is empty.
+	private int[] symbols;
+	private int symbolCount;
+
+	/**************************************************************************
+	 * The chart starts at the end of the columns. The charts before it must
+	 *  not get any more states.
+	 *************************************************************************/
+	CompactChart(CompiledGrammar g, Columns c)
+	{
+		grammar = g;
+		columns = c;
+		first = c.size;
+		firstLink = c.linkCount;
+		table = new int[8];
+		symbols = new int[4 * FIELDS];
+	}
+
+	/**************************************************************************
+	 * remove()
+	 *   Take this chart, which must be the last, off the end of the columns.
+	 *************************************************************************/
+	void remove()
+	{
+		columns.size = first;
+		columns.linkCount = firstLink;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	int getRule(int state)
+	{
+		return columns.rules.get(first + state);
+	}
+
+	int getDot(int state)
+	{
+		return columns.dots.get(first + state);
+	}
+
+	int getOrigin(int state)
+	{
+		return columns.origins.get(first + state);
+	}
+
+	/**************************************************************************
+	 * find()
+	 *   Return the number of the state with this rule, dot and origin, or -1
+	 *   if the chart does not hold it.
+	 *************************************************************************/
+	int find(int rule, int dot, int origin)
+	{
+		int mask = table.length - 1;
+		for ( int h = hash(rule, dot, origin) & mask; table[h] != 0; h = ( h + 1 ) & mask )
+		{
+			int s = table[h] - 1;
+			if ( getRule(s) == rule && getDot(s) == dot && getOrigin(s) == origin )
+				return s;
+		}
+		return -1;
+	}
+
+	/**************************************************************************
+	 * addState()
+	 *   Add the state with this rule, dot and origin if the chart does not
+	 *   hold it yet. Return its number if it is new, or ~number (which is
+	 *   negative) if it was already there.
+	 *************************************************************************/
+	int addState(int rule, int dot, int origin)
+	{
+		int mask = table.length - 1;
+		int h = hash(rule, dot, origin) & mask;
+		for ( ; table[h] != 0; h = ( h + 1 ) & mask )
+		{
+			int s = table[h] - 1;
+			if ( getRule(s) == rule && getDot(s) == dot && getOrigin(s) == origin )
+				return ~s;
+		}
+
+		int s = size++;
+		int at = columns.size++;
+		columns.rules.set(at, rule);
+		columns.dots.set(at, dot);
+		columns.origins.set(at, origin);
+		columns.nexts.set(at, -1);
+		if ( columns.links != null )
+			columns.links.set(at, -1);
+		table[h] = s + 1;
+		if ( size * 2 > table.length )
+			rehash();
+
+		// Put the state at the end of its list.
+		int symbol = grammar.getAfterDot(rule, dot);
+		int head = WAITING_HEAD;
+		int tail = WAITING_TAIL;
+		if ( symbol < 0 )
+		{
+			symbol = grammar.getLHS(rule);
+			head = COMPLETED_HEAD;
+			tail = COMPLETED_TAIL;
+		}
+		int slot = slot(symbol);
+		if ( symbols[slot + head] < 0 )
+			symbols[slot + head] = s;
+		else
+			columns.nexts.set(first + symbols[slot + tail], s);
+		symbols[slot + tail] = s;
+		return s;
+	}
+
+	/**************************************************************************
+	 * addLink()
+	 *   Give the state a back-pointer: the child that completed the symbol
+	 *   it was moved over, or ~predecessor if the symbol was skipped as 
+	 *   nullable. Does nothing if the columns keep no back-pointers.
+	 *************************************************************************/
+	void addLink(int state, int source)
+	{
+		if ( columns.links == null )
+			return;
+
+		int l = columns.linkCount++;
+		columns.linkSource.set(l, source);
+		columns.linkNext.set(l, columns.links.get(first + state));
+		columns.links.set(first + state, l);
+	}
+
+	/**************************************************************************
+	 * firstWaiting()
+	 *   Return the first state waiting on the symbol, or -1. getNext() gives
+	 *   the ones after it. States added later are found as well.
+	 *************************************************************************/
+	int firstWaiting(int symbol)
+	{
+		int slot = findSymbol(symbol);
+		return ( slot < 0 ) ? -1 : symbols[slot + WAITING_HEAD];
+	}
+
+	/**************************************************************************
+	 * firstCompleted()
+	 *   Return the first completed state of the LHS, or -1.
+	 *************************************************************************/
+	int firstCompleted(int symbol)
+	{
+		int slot = findSymbol(symbol);
+		return ( slot < 0 ) ? -1 : symbols[slot + COMPLETED_HEAD];
+	}
+
+	int getNext(int state)
+	{
+		return columns.nexts.get(first + state);
+	}
+
+	boolean isPredicted(int symbol)
+	{
+		int slot = findSymbol(symbol);
+		return slot >= 0 && symbols[slot + PREDICTED] != 0;
+	}
+
+	void setPredicted(int symbol)
+	{
+		int slot = slot(symbol);
+		symbols[slot + PREDICTED] = 1;
+	}
+
+	/**************************************************************************
+	 * toChart()
+	 *   Return a Chart holding the same states in the same order, as the j-th
+	 *   chart, with the same back-pointers. The charts before this one must
+	 *   already have been turned into the given Charts.
+	 *************************************************************************/
+	Chart toChart(int j, Chart[] charts)
+	{
+		Chart chart = new Chart(grammar);
+		State[] states = new State[size];
+		for ( int s = 0; s < size; s++ )
+		{
+			states[s] = new State(getRule(s), getDot(s), getOrigin(s), j);
+			chart.addState(states[s]);
+		}
+
+		int[] list = new int[4];
+		for ( int s = 0; s < size; s++ )
+		{
+			// The back-pointers are listed newest first.
+			int n = 0;
+			for ( int l = columns.links.get(first + s); l >= 0; l = columns.linkNext.get(l) )
+			{
+				if ( n == list.length )
+					list = Arrays.copyOf(list, n * 2);
+				list[n++] = l;
+			}
+
+			for ( int a = n - 1; a >= 0; a-- )
+			{
+				int source = columns.linkSource.get(list[a]);
+				if ( source < 0 )
+				{
+					states[s].addBackPointer(states[~source], null);
+					continue;
+				}
+
+				// The predecessor is in the chart of the child's origin.
+				State child = states[source];
+				Chart origin = ( child.getI() == j ) ? chart : charts[child.getI()];
+				State predecessor = origin.getState(new State(getRule(s), 
+					getDot(s) - 1, getOrigin(s), child.getI()));
+				states[s].addBackPointer(predecessor, child);
+			}
+		}
+		return chart;
+	}
+
+	/**************************************************************************
+	 * bytes()
+	 *   The bytes of the chart's own tables, not counting the columns.
+	 *************************************************************************/
+	long bytes()
+	{
+		return 4L * ( table.length + symbols.length );
+	}
+
+	private static int hash(int rule, int dot, int origin)
+	{
+		int h = ( rule * 31 + dot ) * 31 + origin;
+		h *= 0x9E3779B9;
+		return h ^ ( h >>> 16 );
+	}
+
+	private void rehash()
+	{
+		int[] bigger = new int[table.length * 2];
+		int mask = bigger.length - 1;
+		for ( int s = 0; s < size; s++ )
+		{
+			int h = hash(getRule(s), getDot(s), getOrigin(s)) & mask;
+			while ( bigger[h] != 0 )
+				h = ( h + 1 ) & mask;
+			bigger[h] = s + 1;
+		}
+		table = bigger;
+	}
+
+	// Return the first int of the symbol's slot, or -1 if the chart has not
+	//  seen it.
+	private int findSymbol(int symbol)
+	{
+		int mask = symbols.length / FIELDS - 1;
+		for ( int h = hash(symbol, 0, 0) & mask; symbols[h * FIELDS] != 0; h = ( h + 1 ) & mask )
+			if ( symbols[h * FIELDS] == symbol + 1 )
+				return h * FIELDS;
+		return -1;
+	}
+
+	// Return the first int of the symbol's slot, giving it one if it has none.
+	private int slot(int symbol)
+	{
+		int slot = findSymbol(symbol);
+		if ( slot >= 0 )
+			return slot;
+
+		if ( ( symbolCount + 1 ) * 2 * FIELDS > symbols.length )
+		{
+			int[] old = symbols;
+			symbols = new int[old.length * 2];
+			for ( int a = 0; a < old.length; a += FIELDS )
+				if ( old[a + KEY] != 0 )
+					System.arraycopy(old, a, symbols, place(old[a + KEY] - 1), FIELDS);
+		}
+
+		slot = place(symbol);
+		symbols[slot + KEY] = symbol + 1;
+		symbols[slot + WAITING_HEAD] = -1;
+		symbols[slot + COMPLETED_HEAD] = -1;
+		symbolCount++;
+		return slot;
+	}
+
+	// Return the first int of the empty slot the symbol hashes to.
+	private int place(int symbol)
+	{
+		int mask = symbols.length / FIELDS - 1;
+		int h = hash(symbol, 0, 0) & mask;
+		while ( symbols[h * FIELDS + KEY] != 0 )
+			h = ( h + 1 ) & mask;
+		return h * FIELDS;
+	}
+}
@@ -0,0 +1,157 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * CompactParser
+ *   The CompactParser does the work of the EarleyParser on CompactCharts:
+ *   the same predictor, scanner and completer, the same nullable symbols
+ *   and the same filtering of predictions by the next word, but every state
+ *   is a number in its chart instead of a State. The charts it builds hold
+ *   the same states, in the same order, as the EarleyParser's, so turning
+ *   them into Charts gives the same trees.
+ *
+ *   Leo's optimisation is not used on CompactCharts.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import java.util.BitSet;
+
+class CompactParser
+{
+	private CompiledGrammar grammar;
+
+	CompactParser(CompiledGrammar g)
+	{
+		grammar = g;
+	}
+
+	/**************************************************************************
+	 * close()
+	 *   Finish the k-th chart, as EarleyParser.close() does.
+	 *************************************************************************/
+	void close(ParseContext c, int k)
+	{
+		CompactChart chart = c.getCompactChart(k);
+		ParseStats stats = c.getStats();
+
+		for ( int s = 0; s < chart.size(); s++ )
+		{
+			c.check(chart.size());
+
+			int rule = chart.getRule(s);
+			int dot = chart.getDot(s);
+			int next_term = grammar.getAfterDot(rule, dot);
+
+			if ( next_term < 0 )
+				completer(c, k, s);
+			else if ( ! grammar.isPartOfSpeech(next_term) )
+			{
+				predictor(c, k, next_term);
+
+				if ( grammar.isNullable(next_term) )
+				{
+					int added = chart.addState(rule, dot + 1, chart.getOrigin(s));
+					chart.addLink(( added < 0 ) ? ~added : added, ~s);
+					if ( stats != null )
+					{
+						stats.nullableSkips++;
+						if ( added < 0 )
+							stats.duplicates++;
+					}
+				}
+			}
+		}
+	}
+
+	/**************************************************************************
+	 * scan()
+	 *   Scan the k-th word from the k-th chart into the (k+1)-th, as
+	 *   EarleyParser.scan() does.
+	 *************************************************************************/
+	void scan(ParseContext c, int k)
+	{
+		CompactChart chart = c.getCompactChart(k);
+		CompactChart next = c.getCompactChart(k + 1);
+		int[] rules = c.getLexicalRules(k);
+		ParseStats stats = c.getStats();
+
+		for ( int a = 0; a < rules.length; a++ )
+		{
+			if ( chart.firstWaiting(grammar.getLHS(rules[a])) < 0 )
+				continue;
+
+			int added = next.addState(rules[a], 1, k);
+			if ( stats != null )
+			{
+				stats.scans++;
+				if ( added < 0 )
+					stats.duplicates++;
+			}
+		}
+	}
+
+	/**************************************************************************
+	 * predictor()
+	 *   Add the rules of every symbol in the prediction closure of the symbol
+	 *   that the chart has not predicted yet, leaving out those that cannot
+	 *   start with the next word if it is known.
+	 *************************************************************************/
+	private void predictor(ParseContext c, int k, int symbol)
+	{
+		CompactChart chart = c.getCompactChart(k);
+		if ( chart.isPredicted(symbol) )
+			return;
+
+		int[] closure = grammar.getClosure(symbol);
+		BitSet next = c.getLookahead(k);
+		ParseStats stats = c.getStats();
+
+		for ( int a = 0; a < closure.length; a++ )
+		{
+			if ( chart.isPredicted(closure[a]) )
+				continue;
+			chart.setPredicted(closure[a]);
+
+			int[] rules = grammar.getRules(closure[a]);
+			for ( int i = 0; i < rules.length; i++ )
+			{
+				if ( next != null && ! grammar.canStartWith(rules[i], next) )
+					continue;
+
+				int added = chart.addState(rules[i], 0, k);
+				if ( stats != null )
+				{
+					stats.predictions++;
+					if ( added < 0 )
+						stats.duplicates++;
+				}
+			}
+		}
+	}
+
+	/**************************************************************************
+	 * completer()
+	 *   Move every state of the origin chart of the completed state s that
+	 *   waits on its LHS over it, into the k-th chart.
+	 *************************************************************************/
+	private void completer(ParseContext c, int k, int s)
+	{
+		CompactChart chart = c.getCompactChart(k);
+		CompactChart origin = c.getCompactChart(chart.getOrigin(s));
+		ParseStats stats = c.getStats();
+
+		int w = origin.firstWaiting(grammar.getLHS(chart.getRule(s)));
+		for ( ; w >= 0; w = origin.getNext(w) )
+		{
+			int added = chart.addState(origin.getRule(w), origin.getDot(w) + 1,
+									   origin.getOrigin(w));
+			chart.addLink(( added < 0 ) ? ~added : added, s);
+			if ( stats != null )
+			{
+				stats.completions++;
+				if ( added < 0 )
+					stats.duplicates++;
+			}
+		}
+	}
+}
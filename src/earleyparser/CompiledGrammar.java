@@ -0,0 +1,824 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * CompiledGrammar
+ *   The CompiledGrammar is the form of a Grammar that the parser works on.
+ *   Every symbol (non-terminals, parts of speech and words alike) is given an
+ *   integer id and every rule is given an integer id. A rule is a LHS symbol
+ *   and an array of RHS symbols, so a dotted rule is nothing more than a rule
+ *   id and the position of the dot in its RHS.
+ *
+ *   Symbol 0 is always the start symbol "$" and rule 0 is always "$ -> S".
+ *   Once created, a CompiledGrammar is never changed, so it is safe to share
+ *   between threads.
+ * 
+ *   The lexical rules, a Part of Speech with a single word as its RHS, are 
+ *   also indexed by their word. Words are case-folded the same way 
+ *   String.compareToIgnoreCase() compares them, so looking up a word of the 
+ *   sentence finds exactly the rules the scanner would have matched.
+ * 
+ *   A rule may have an empty RHS. The symbols that can derive nothing, the
+ *   nullable symbols, are found once here so the parser can step over them
+ *   without waiting for them to complete. Parts of Speech are only matched 
+ *   against words, so they are never nullable.
+ * 
+ *   The grammar also knows which Parts of Speech each symbol and each rule
+ *   can start with: the Parts of Speech that are left corners of it, found 
+ *   through any nullable symbols before them (its FIRST set). When the next
+ *   word is known, a rule that cannot start with any Part of Speech of that
+ *   word, and cannot derive nothing, will never be used and need not be 
+ *   predicted. canStartWith() answers this for the predictor.
+ * 
+ *   Predicting a symbol adds its rules, whose first symbols are predicted in
+ *   turn, and so on. The symbols reached this way, the prediction closure of
+ *   the symbol, are worked out here once for every symbol, so the predictor
+ *   can add them all in one go.
+ * 
+ *   A CompiledGrammar can be saved to a binary snapshot with save() and read
+ *   back with load(). The snapshot holds the numbered symbols and rules and
+ *   the results of the fixpoints above, so loading a grammar, even one with
+ *   a very large lexicon, only reads arrays back out of the mapped file.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Vector;
+
+public class CompiledGrammar
+{
+	// The start symbol and the start rule "$ -> S".
+	public final static int START_SYMBOL = 0;
+	public final static int START_RULE = 0;
+
+	final static String START = "$";
+	final static String SENTENCE = "S";
+
+	// The name of every symbol, indexed by the symbol id.
+	private final String[] names;
+
+	// The id of every symbol, keyed by its name.
+	private final HashMap<String, Integer> ids;
+
+	// True for the symbols that are Parts of Speech.
+	private final boolean[] partOfSpeech;
+
+	// The LHS symbol and the RHS symbols of every rule, indexed by rule id.
+	private final int[] ruleLHS;
+	private final int[][] ruleRHS;
+
+	// The probability of every rule, indexed by rule id.
+	private final double[] ruleProbability;
+
+	// The ids of the rules for every symbol, indexed by the symbol id. Words
+	//  have an empty array.
+	private final int[][] rules;
+
+	// True for the symbols that can derive nothing.
+	private final boolean[] nullable;
+
+	// The Parts of Speech numbered from 0, indexed by the symbol id. The 
+	//  other symbols have -1.
+	private final int[] posNumber;
+
+	// The numbers of the Parts of Speech that each symbol, and each rule, 
+	//  can start with.
+	private final BitSet[] first;
+	private final BitSet[] ruleFirst;
+
+	// True for the rules whose RHS can derive nothing.
+	private final boolean[] ruleNullable;
+
+	// The prediction closure of every symbol, indexed by the symbol id. Parts
+	//  of Speech are left to the scanner, so they have an empty closure and
+	//  are never in one.
+	private final int[][] closure;
+
+	// The lexical rules for every case-folded word.
+	private final HashMap<String, int[]> lexicon;
+
+	final static private int[] NONE = new int[0];
+
+	// Shared by the many symbols and rules that start with nothing. It must
+	//  never be changed.
+	final static private BitSet EMPTY = new BitSet();
+
+	// The first two ints of a snapshot file.
+	final static private int MAGIC = 0x45504731;
+	final static private int VERSION = 2;
+
+	final static private Charset UTF8 = Charset.forName("UTF-8");
+
+	public CompiledGrammar(Grammar g)
+	{
+		this(number(g));
+	}
+
+	/**************************************************************************
+	 * The rules and symbols of the grammar are numbered first, by number() 
+	 *  or by load(). Everything else is worked out from them, except for the
+	 *  nullable symbols, the FIRST sets and the closures when a snapshot 
+	 *  already has them.
+	 *************************************************************************/
+	private CompiledGrammar(Tables t)
+	{
+		names = t.names;
+		partOfSpeech = t.partOfSpeech;
+		ruleLHS = t.ruleLHS;
+		ruleRHS = t.ruleRHS;
+		ruleProbability = t.ruleProbability;
+
+		ids = new HashMap<String, Integer>(names.length * 2);
+		for ( int s = 0; s < names.length; s++ )
+			ids.put(names[s], s);
+
+		// Group the rules by their LHS.
+		int[] count = new int[names.length];
+		for ( int r = 0; r < ruleLHS.length; r++ )
+			count[ruleLHS[r]]++;
+
+		rules = new int[names.length][];
+		for ( int s = 0; s < names.length; s++ )
+			rules[s] = ( count[s] == 0 ) ? NONE : new int[count[s]];
+
+		int[] fill = new int[names.length];
+		for ( int r = 0; r < ruleLHS.length; r++ )
+		{
+			int lhs = ruleLHS[r];
+			rules[lhs][fill[lhs]++] = r;
+		}
+
+		nullable = ( t.nullable != null ) ? t.nullable : findNullable();
+
+		posNumber = new int[names.length];
+		int pos = 0;
+		for ( int s = 0; s < names.length; s++ )
+			posNumber[s] = partOfSpeech[s] ? pos++ : -1;
+
+		first = ( t.first != null ) ? t.first : findFirst();
+
+		ruleFirst = new BitSet[ruleLHS.length];
+		ruleNullable = new boolean[ruleLHS.length];
+		for ( int r = 0; r < ruleLHS.length; r++ )
+		{
+			// A lexical rule starts with a word, and words start with nothing.
+			ruleFirst[r] = isLexical(r) ? EMPTY : startOf(ruleRHS[r]);
+			if ( ruleFirst[r].isEmpty() )
+				ruleFirst[r] = EMPTY;
+
+			boolean all = true;
+			for ( int a = 0; a < ruleRHS[r].length && all; a++ )
+				all = nullable[ruleRHS[r][a]];
+			ruleNullable[r] = all;
+		}
+
+		closure = ( t.closure != null ) ? t.closure : findClosure();
+
+		// Index the lexical rules by their word.
+		lexicon = new HashMap<String, int[]>(ruleLHS.length * 2);
+		for ( int r = 0; r < ruleLHS.length; r++ )
+		{
+			if ( ! isLexical(r) )
+				continue;
+
+			String word = fold(names[ruleRHS[r][0]]);
+			int[] found = lexicon.get(word);
+			if ( found == null )
+				found = new int[] { r };
+			else
+			{
+				found = Arrays.copyOf(found, found.length + 1);
+				found[found.length - 1] = r;
+			}
+			lexicon.put(word, found);
+		}
+	}
+
+	/**************************************************************************
+	 * number()
+	 *   Number the symbols and the rules of the grammar. The start rule comes
+	 *   first, then the rules of the grammar in the order they appear for 
+	 *   their LHS.
+	 *************************************************************************/
+	private static Tables number(Grammar g)
+	{
+		Vector<String> symbolNames = new Vector<String>();
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		intern(START, symbolNames, ids);
+		intern(SENTENCE, symbolNames, ids);
+
+		Vector<int[]> rhsList = new Vector<int[]>();
+		Vector<Integer> lhsList = new Vector<Integer>();
+		Vector<Double> probList = new Vector<Double>();
+		lhsList.add(START_SYMBOL);
+		rhsList.add(new int[] { ids.get(SENTENCE) });
+		probList.add(1.0);
+
+		Iterator<Map.Entry<String, RHS[]>> it = g.Rules.entrySet().iterator();
+		while ( it.hasNext() )
+		{
+			Map.Entry<String, RHS[]> e = it.next();
+			int lhs = intern(e.getKey(), symbolNames, ids);
+			RHS[] rhs = e.getValue();
+
+			for ( int a = 0; a < rhs.length; a++ )
+			{
+				String[] terms = rhs[a].getTerms();
+				int[] t = new int[terms.length];
+				for ( int b = 0; b < terms.length; b++ )
+					t[b] = intern(terms[b], symbolNames, ids);
+
+				lhsList.add(lhs);
+				rhsList.add(t);
+				probList.add(rhs[a].getProbability());
+			}
+		}
+
+		for ( int a = 0; a < g.POS.size(); a++ )
+			intern(g.POS.get(a), symbolNames, ids);
+
+		Tables t = new Tables();
+		t.names = symbolNames.toArray(new String[symbolNames.size()]);
+
+		t.ruleLHS = new int[lhsList.size()];
+		t.ruleRHS = new int[rhsList.size()][];
+		t.ruleProbability = new double[probList.size()];
+		for ( int r = 0; r < t.ruleLHS.length; r++ )
+		{
+			t.ruleLHS[r] = lhsList.get(r);
+			t.ruleRHS[r] = rhsList.get(r);
+			t.ruleProbability[r] = probList.get(r);
+		}
+
+		t.partOfSpeech = new boolean[t.names.length];
+		for ( int a = 0; a < g.POS.size(); a++ )
+			t.partOfSpeech[ids.get(g.POS.get(a))] = true;
+
+		return t;
+	}
+
+	/**************************************************************************
+	 * findNullable()
+	 *   A symbol is nullable if one of its rules has only nullable symbols in
+	 *   its RHS. Repeat until no more nullable symbols are found.
+	 *************************************************************************/
+	private boolean[] findNullable()
+	{
+		boolean[] found = new boolean[names.length];
+		boolean changed = true;
+		while ( changed )
+		{
+			changed = false;
+			for ( int r = 0; r < ruleLHS.length; r++ )
+			{
+				int lhs = ruleLHS[r];
+				if ( found[lhs] || partOfSpeech[lhs] )
+					continue;
+
+				boolean all = true;
+				for ( int a = 0; a < ruleRHS[r].length && all; a++ )
+					all = found[ruleRHS[r][a]];
+
+				if ( all )
+				{
+					found[lhs] = true;
+					changed = true;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**************************************************************************
+	 * findFirst()
+	 *   A Part of Speech starts with itself. A symbol starts with whatever the
+	 *   RHS of one of its rules starts with. Repeat until no FIRST set grows 
+	 *   any more. The nullable symbols must be known. The symbols that start
+	 *   with nothing, such as the words, share EMPTY.
+	 *************************************************************************/
+	private BitSet[] findFirst()
+	{
+		BitSet[] found = new BitSet[names.length];
+		for ( int s = 0; s < names.length; s++ )
+		{
+			found[s] = EMPTY;
+			if ( partOfSpeech[s] )
+			{
+				found[s] = new BitSet();
+				found[s].set(posNumber[s]);
+			}
+		}
+
+		boolean changed = true;
+		while ( changed )
+		{
+			changed = false;
+			for ( int r = 0; r < ruleLHS.length; r++ )
+			{
+				int lhs = ruleLHS[r];
+				if ( partOfSpeech[lhs] )
+					continue;
+
+				BitSet start = startOf(ruleRHS[r], found);
+				if ( start.isEmpty() )
+					continue;
+				if ( found[lhs] == EMPTY )
+					found[lhs] = new BitSet();
+
+				int before = found[lhs].cardinality();
+				found[lhs].or(start);
+				if ( found[lhs].cardinality() != before )
+					changed = true;
+			}
+		}
+		return found;
+	}
+
+	/**************************************************************************
+	 * findClosure()
+	 *   The closure of a symbol starts with the symbol itself. Every rule of a
+	 *   symbol in it adds the symbols it starts with, as far as the first one
+	 *   that is not nullable.
+	 *************************************************************************/
+	private int[][] findClosure()
+	{
+		int[][] closures = new int[names.length][];
+		int[] seen = new int[names.length];
+		Arrays.fill(seen, -1);
+		for ( int s = 0; s < names.length; s++ )
+		{
+			if ( partOfSpeech[s] )
+			{
+				closures[s] = NONE;
+				continue;
+			}
+
+			int[] found = new int[] { s };
+			int size = 1;
+			seen[s] = s;
+			for ( int a = 0; a < size; a++ )
+			{
+				int[] r = rules[found[a]];
+				for ( int b = 0; b < r.length; b++ )
+				{
+					int[] rhs = ruleRHS[r[b]];
+					for ( int c = 0; c < rhs.length; c++ )
+					{
+						int t = rhs[c];
+						if ( ! partOfSpeech[t] && seen[t] != s )
+						{
+							seen[t] = s;
+							if ( size == found.length )
+								found = Arrays.copyOf(found, size * 2);
+							found[size++] = t;
+						}
+						if ( ! nullable[t] )
+							break;
+					}
+				}
+			}
+			closures[s] = Arrays.copyOf(found, size);
+		}
+		return closures;
+	}
+
+	/**************************************************************************
+	 * startOf()
+	 *   Return the Parts of Speech the symbols can start with, taken from the
+	 *   FIRST sets of the symbols up to and including the first one that is
+	 *   not nullable.
+	 *************************************************************************/
+	private BitSet startOf(int[] symbols)
+	{
+		return startOf(symbols, first);
+	}
+
+	private BitSet startOf(int[] symbols, BitSet[] first)
+	{
+		BitSet start = new BitSet();
+		for ( int a = 0; a < symbols.length; a++ )
+		{
+			start.or(first[symbols[a]]);
+			if ( ! nullable[symbols[a]] )
+				break;
+		}
+		return start;
+	}
+
+	/**************************************************************************
+	 * fold()
+	 *   Case-fold a word the way String.compareToIgnoreCase() compares two 
+	 *   characters, first to upper case and then to lower case.
+	 *************************************************************************/
+	static String fold(String word)
+	{
+		// Most words are already folded, and are returned as they are.
+		int i = 0;
+		while ( i < word.length() && 
+				fold(word.charAt(i)) == word.charAt(i) )
+			i++;
+		if ( i == word.length() )
+			return word;
+
+		char[] c = word.toCharArray();
+		for ( ; i < c.length; i++ )
+			c[i] = fold(c[i]);
+		return new String(c);
+	}
+
+	private static char fold(char c)
+	{
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**************************************************************************
+	 * intern()
+	 *   Return the id of the symbol, giving it the next free id if it has
+	 *   not been seen before.
+	 *************************************************************************/
+	private static int intern(String name, Vector<String> symbolNames,
+							  HashMap<String, Integer> ids)
+	{
+		Integer id = ids.get(name);
+		if ( id == null )
+		{
+			id = symbolNames.size();
+			ids.put(name, id);
+			symbolNames.add(name);
+		}
+		return id;
+	}
+
+	public int getSymbolCount()
+	{
+		return names.length;
+	}
+
+	public int getRuleCount()
+	{
+		return ruleLHS.length;
+	}
+
+	/**************************************************************************
+	 * getSymbol()
+	 *   Return the id of the symbol with the given name, or -1 if the grammar
+	 *   does not use it.
+	 *************************************************************************/
+	public int getSymbol(String name)
+	{
+		Integer id = ids.get(name);
+		if ( id == null )
+			return -1;
+		return id;
+	}
+
+	public String getName(int symbol)
+	{
+		return names[symbol];
+	}
+
+	public boolean isPartOfSpeech(int symbol)
+	{
+		return partOfSpeech[symbol];
+	}
+
+	public boolean isNullable(int symbol)
+	{
+		return nullable[symbol];
+	}
+
+	public int[] getRules(int symbol)
+	{
+		return rules[symbol];
+	}
+
+	/**************************************************************************
+	 * getClosure()
+	 *   Return the prediction closure of the symbol: the symbol itself, then 
+	 *   every symbol predicting it leads to, in the order the predictor would
+	 *   reach them. The array must not be changed.
+	 *************************************************************************/
+	public int[] getClosure(int symbol)
+	{
+		return closure[symbol];
+	}
+
+	/**************************************************************************
+	 * getLexicalRules()
+	 *   Return the lexical rules whose word matches the given word, ignoring
+	 *   case. The array is empty if the word is not in the lexicon and must 
+	 *   not be changed.
+	 *************************************************************************/
+	public int[] getLexicalRules(String word)
+	{
+		int[] found = lexicon.get(fold(word));
+		if ( found == null )
+			return NONE;
+		return found;
+	}
+
+	/**************************************************************************
+	 * getPartsOfSpeech()
+	 *   Return the numbers of the Parts of Speech of the given lexical rules,
+	 *   as canStartWith() takes them.
+	 *************************************************************************/
+	public BitSet getPartsOfSpeech(int[] lexicalRules)
+	{
+		BitSet found = new BitSet();
+		for ( int a = 0; a < lexicalRules.length; a++ )
+			found.set(posNumber[ruleLHS[lexicalRules[a]]]);
+		return found;
+	}
+
+	/**************************************************************************
+	 * canStartWith()
+	 *   True if the RHS of the rule can derive nothing, or can start with one
+	 *   of the Parts of Speech given, numbered as getPartsOfSpeech() returns
+	 *   them.
+	 *************************************************************************/
+	public boolean canStartWith(int rule, BitSet partsOfSpeech)
+	{
+		return ruleNullable[rule] || ruleFirst[rule].intersects(partsOfSpeech);
+	}
+
+	/**************************************************************************
+	 * isLexical()
+	 *   True if the rule is a Part of Speech with a single word as its RHS, 
+	 *   the kind of rule the scanner matches against the sentence.
+	 *************************************************************************/
+	public boolean isLexical(int rule)
+	{
+		return partOfSpeech[ruleLHS[rule]] && ruleRHS[rule].length == 1;
+	}
+
+	public int getLHS(int rule)
+	{
+		return ruleLHS[rule];
+	}
+
+	public int[] getRHS(int rule)
+	{
+		return ruleRHS[rule];
+	}
+
+	/**************************************************************************
+	 * getProbability()
+	 *   Return the probability of the rule, 1 if the grammar gave none.
+	 *************************************************************************/
+	public double getProbability(int rule)
+	{
+		return ruleProbability[rule];
+	}
+
+	/**************************************************************************
+	 * isComplete()
+	 *   True if the dot is after the last symbol of the rule.
+	 *************************************************************************/
+	public boolean isComplete(int rule, int dot)
+	{
+		return dot == ruleRHS[rule].length;
+	}
+
+	/**************************************************************************
+	 * getAfterDot()
+	 *   Return the symbol just after the dot, or -1 if the dot is last.
+	 *************************************************************************/
+	public int getAfterDot(int rule, int dot)
+	{
+		int[] rhs = ruleRHS[rule];
+		if ( dot < rhs.length )
+			return rhs[dot];
+		return -1;
+	}
+
+	/**************************************************************************
+	 * getPriorToDot()
+	 *   Return the symbol just before the dot, or -1 if the dot is first.
+	 *************************************************************************/
+	public int getPriorToDot(int rule, int dot)
+	{
+		if ( dot > 0 )
+			return ruleRHS[rule][dot - 1];
+		return -1;
+	}
+
+	/**************************************************************************
+	 * toString()
+	 *   Print the dotted rule the same way the RHS class prints one, using
+	 *   '@' for the dot.
+	 *************************************************************************/
+	public String toString(int rule, int dot)
+	{
+		StringBuffer out = new StringBuffer();
+		int[] rhs = ruleRHS[rule];
+
+		out.append(names[ruleLHS[rule]] + "\t->");
+		for ( int a = 0; a < rhs.length; a++ )
+		{
+			if ( a == dot )
+				out.append(" @");
+			out.append(" " + names[rhs[a]]);
+		}
+		if ( dot == rhs.length )
+			out.append(" @");
+
+		return out.toString();
+	}
+
+	/**************************************************************************
+	 * save()
+	 *   Write a binary snapshot of the grammar to the file. load() reads it
+	 *   back without compiling the grammar again.
+	 *************************************************************************/
+	public void save(String fileName) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+			new FileOutputStream(fileName), 1 << 16));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(names.length);
+			for ( int s = 0; s < names.length; s++ )
+			{
+				byte[] name = names[s].getBytes(UTF8);
+				out.writeInt(name.length);
+				out.write(name);
+				out.writeByte(( partOfSpeech[s] ? 1 : 0 ) | ( nullable[s] ? 2 : 0 ));
+			}
+
+			out.writeInt(ruleLHS.length);
+			for ( int r = 0; r < ruleLHS.length; r++ )
+			{
+				out.writeInt(ruleLHS[r]);
+				writeInts(out, ruleRHS[r]);
+				out.writeDouble(ruleProbability[r]);
+			}
+
+			for ( int s = 0; s < names.length; s++ )
+			{
+				long[] bits = first[s].toLongArray();
+				out.writeInt(bits.length);
+				for ( int a = 0; a < bits.length; a++ )
+					out.writeLong(bits[a]);
+			}
+
+			for ( int s = 0; s < names.length; s++ )
+				writeInts(out, closure[s]);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException
+	{
+		out.writeInt(values.length);
+		for ( int a = 0; a < values.length; a++ )
+			out.writeInt(values[a]);
+	}
+
+	/**************************************************************************
+	 * load()
+	 *   Read a grammar from a snapshot written by save(). The file is mapped
+	 *   into memory and its arrays are read straight out of it. A snapshot 
+	 *   that is cut short or does not hold a grammar throws an IOException.
+	 *************************************************************************/
+	public static CompiledGrammar load(String fileName) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		ByteBuffer in;
+		try
+		{
+			FileChannel channel = file.getChannel();
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			file.close();
+		}
+
+		if ( in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != VERSION )
+			throw new IOException(fileName + " is not a grammar snapshot");
+
+		try
+		{
+			return read(in);
+		}
+		catch ( BufferUnderflowException e )
+		{
+			throw new IOException(fileName + " is cut short", e);
+		}
+		catch ( IndexOutOfBoundsException e )
+		{
+			throw new IOException(fileName + " is not a valid grammar snapshot", e);
+		}
+	}
+
+	/**************************************************************************
+	 * read()
+	 *   Read the tables of a snapshot after its header and compile them. A 
+	 *   snapshot cut short throws a BufferUnderflowException, and one whose 
+	 *   numbers do not fit together an IndexOutOfBoundsException.
+	 *************************************************************************/
+	private static CompiledGrammar read(ByteBuffer in)
+	{
+		Tables t = new Tables();
+		int symbols = length(in, 5);
+		t.names = new String[symbols];
+		t.partOfSpeech = new boolean[symbols];
+		t.nullable = new boolean[symbols];
+		for ( int s = 0; s < symbols; s++ )
+		{
+			byte[] name = new byte[length(in, 1)];
+			in.get(name);
+			t.names[s] = new String(name, UTF8);
+
+			byte flags = in.get();
+			t.partOfSpeech[s] = ( flags & 1 ) != 0;
+			t.nullable[s] = ( flags & 2 ) != 0;
+		}
+
+		int count = length(in, 16);
+		t.ruleLHS = new int[count];
+		t.ruleRHS = new int[count][];
+		t.ruleProbability = new double[count];
+		for ( int r = 0; r < count; r++ )
+		{
+			t.ruleLHS[r] = in.getInt();
+			t.ruleRHS[r] = readInts(in);
+			t.ruleProbability[r] = in.getDouble();
+		}
+
+		t.first = new BitSet[symbols];
+		for ( int s = 0; s < symbols; s++ )
+		{
+			long[] bits = new long[length(in, 8)];
+			for ( int a = 0; a < bits.length; a++ )
+				bits[a] = in.getLong();
+			t.first[s] = ( bits.length == 0 ) ? EMPTY : BitSet.valueOf(bits);
+		}
+
+		t.closure = new int[symbols][];
+		for ( int s = 0; s < symbols; s++ )
+		{
+			t.closure[s] = readInts(in);
+			if ( t.closure[s].length == 0 )
+				t.closure[s] = NONE;
+		}
+
+		return new CompiledGrammar(t);
+	}
+
+	private static int[] readInts(ByteBuffer in)
+	{
+		int[] values = new int[length(in, 4)];
+		for ( int a = 0; a < values.length; a++ )
+			values[a] = in.getInt();
+		return values;
+	}
+
+	// Read the number of entries of a list whose entries take at least size
+	//  bytes each, and check that the rest of the snapshot can hold them.
+	private static int length(ByteBuffer in, int size)
+	{
+		int n = in.getInt();
+		if ( n < 0 || n > in.remaining() / size )
+			throw new BufferUnderflowException();
+		return n;
+	}
+
+	/**************************************************************************
+	 * Tables
+	 *   This is a helper class. It carries the numbered symbols and rules to
+	 *   the constructor, and whatever a snapshot already worked out from them.
+	 *************************************************************************/
+	private static class Tables
+	{
+		String[] names;
+		boolean[] partOfSpeech;
+		int[] ruleLHS;
+		int[][] ruleRHS;
+		double[] ruleProbability;
+
+		// Null if they are still to be worked out.
+		boolean[] nullable;
+		BitSet[] first;
+		int[][] closure;
+	}
+}
@@ -6,20 +6,107 @@
  *   This does the hard labor for parsing the sentence into charts that we can
  *   use to determine all of the parse trees that describe the sentence.
  * 
+ *   The parser works on the CompiledGrammar of the grammar it is given, so 
+ *   the states it creates and compares are only numbers.
+ * 
+ *   Everything about one sentence is kept in the ParseContext that parse() 
+ *   returns, so one parser can be used on many threads at once. Only the
+ *   older parseSentence() and getCharts() pair remembers the last sentence.
+ *   parseAll() uses this to parse a batch of sentences on many threads.
+ * 
+ *   Each chart is finished (close()) before the next word is scanned from
+ *   it into the next chart (scan()). Since a chart never changes once the 
+ *   next word is scanned, begin() can hand out a ParseContext that takes 
+ *   the words one at a time, and parse() is just that with every word.
+ *   The ParseContext finishes a chart once it knows the next word, and the
+ *   predictor only adds the rules that can start with that word.
+ * 
+ *   With setLeo(true) the completer uses Leo's optimisation for right 
+ *   recursion (see LeoItem). The charts then hold fewer states while 
+ *   parsing; the skipped ones are added back when the charts are asked for.
+ * 
+ *   A ParseBudget limits the work of each parse. It can be given to one 
+ *   parse, or set on the parser for every parse that is not given one.
+ * 
+ *   With setCounting(true), or with a ParseListener, every ParseContext 
+ *   gets a ParseStats that the steps below count into. Without them the 
+ *   counting is skipped with one null test per step. Each parse() is also
+ *   recorded as a ParseEvent for JDK Flight Recorder.
+ * 
+ *   The storage of the parser says how the charts of each parse are kept:
+ *   as State objects in Charts (STATES), or as columns of ints in 
+ *   CompactCharts, on the heap (COLUMNS) or off it (OFF_HEAP). A state in a
+ *   CompactChart takes a tenth of the memory or less, which matters for long
+ *   sentences. Such charts are built by a CompactParser, without Leo's 
+ *   optimisation, and only turned into Charts when trees are asked for.
+ *   RECOGNIZE keeps CompactCharts on the heap with no back-pointers at 
+ *   all, for when only isAccepted() is wanted, as when filtering a large 
+ *   corpus for grammatical sentences. It is the fastest and the smallest, 
+ *   but its charts cannot give trees.
+ * 
  *****************************************************************************/
 package earleyparser;
 
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class EarleyParser
 {
+	/**************************************************************************
+	 * Storage
+	 *   The ways the charts of a parse can be kept.
+	 *************************************************************************/
+	public enum Storage
+	{
+		STATES,
+		COLUMNS,
+		OFF_HEAP,
+		RECOGNIZE
+	}
+
 	private Grammar grammar;
-	private String[] sentence;
-	private Chart[] charts;
+	private CompiledGrammar compiled;
+
+	// How the charts are kept, and the parser for CompactCharts.
+	private Storage storage = Storage.STATES;
+	private CompactParser compact;
+
+	// True if the completer uses Leo's optimisation.
+	private boolean leo;
+
+	// True if the steps of every parse are counted, and the listener told 
+	//  about every parse, or null.
+	private boolean counting;
+	private ParseListener listener;
+
+	// The budget of the parses that are not given one, or null.
+	private ParseBudget budget;
+
+	// The last sentence given to parseSentence().
+	private volatile ParseContext last;
 
 	public EarleyParser(Grammar g)
 	{
 		grammar = g;
+		compiled = g.compile();
+		compact = new CompactParser(compiled);
+	}
+
+	/**************************************************************************
+	 * A parser can also be made from a CompiledGrammar alone, for instance 
+	 *  one loaded from a snapshot. Its getGrammar() then returns null.
+	 *************************************************************************/
+	public EarleyParser(CompiledGrammar g)
+	{
+		grammar = null;
+		compiled = g;
+		compact = new CompactParser(compiled);
 	}
 
 	public Grammar getGrammar()
@@ -27,15 +114,145 @@ public class EarleyParser
 		return grammar;
 	}
 
+	public CompiledGrammar getCompiledGrammar()
+	{
+		return compiled;
+	}
+
+	public boolean isLeo()
+	{
+		return leo;
+	}
+
+	/**************************************************************************
+	 * setLeo()
+	 *   Turn Leo's optimisation for right-recursive rules on or off. This must
+	 *   not be changed while the parser is being used.
+	 *************************************************************************/
+	public void setLeo(boolean on)
+	{
+		leo = on;
+	}
+
+	public Storage getStorage()
+	{
+		return storage;
+	}
+
+	/**************************************************************************
+	 * setStorage()
+	 *   Keep the charts of every parse begun after this as the storage says.
+	 *************************************************************************/
+	public void setStorage(Storage s)
+	{
+		storage = s;
+	}
+
+	public boolean isCounting()
+	{
+		return counting;
+	}
+
+	/**************************************************************************
+	 * setCounting()
+	 *   Count the steps of every parse begun after this in a ParseStats. 
+	 *************************************************************************/
+	public void setCounting(boolean on)
+	{
+		counting = on;
+	}
+
+	public ParseListener getListener()
+	{
+		return listener;
+	}
+
+	/**************************************************************************
+	 * setListener()
+	 *   Tell the listener about every parse begun after this, or about none
+	 *   if it is null. A listener turns counting on for those parses.
+	 *************************************************************************/
+	public void setListener(ParseListener l)
+	{
+		listener = l;
+	}
+
+	public ParseBudget getBudget()
+	{
+		return budget;
+	}
+
+	/**************************************************************************
+	 * setBudget()
+	 *   Set the budget of every parse that is not given its own, or null for 
+	 *   no limits.
+	 *************************************************************************/
+	public void setBudget(ParseBudget b)
+	{
+		budget = b;
+	}
+
+	/**************************************************************************
+	 * getExceeded()
+	 *   Return the limit the last sentence given to parseSentence() went over,
+	 *   or null if it did not go over any.
+	 *************************************************************************/
+	public ParseBudget.Limit getExceeded()
+	{
+		ParseContext c = last;
+		return ( c == null ) ? null : c.getExceeded();
+	}
+
+	/**************************************************************************
+	 * getCharts()
+	 *   Return the charts of the last sentence given to parseSentence(), or
+	 *   null if there was none.
+	 *************************************************************************/
 	public Chart[] getCharts()
 	{
-		return charts;
+		ParseContext c = last;
+		return ( c == null ) ? null : c.getCharts();
+	}
+
+	/**************************************************************************
+	 * getForest()
+	 *   Build the shared packed parse forest of the last sentence given to 
+	 *   parseSentence(), or return null if there was none. The forest holds
+	 *   every parse tree of the sentence without listing them.
+	 *************************************************************************/
+	public ParseForest getForest()
+	{
+		ParseContext c = last;
+		return ( c == null ) ? null : c.getForest();
+	}
+
+	/**************************************************************************
+	 * getBestTree()
+	 *   Return the most probable parse tree of the last sentence given to 
+	 *   parseSentence(), or null if it has no parse or there was none.
+	 *************************************************************************/
+	public ParseTree getBestTree()
+	{
+		ParseContext c = last;
+		return ( c == null ) ? null : c.getBestTree();
+	}
+
+	/**************************************************************************
+	 * getProbability()
+	 *   Return the probability of the last sentence given to parseSentence(),
+	 *   or 0 if there was none.
+	 *************************************************************************/
+	public double getProbability()
+	{
+		ParseContext c = last;
+		return ( c == null ) ? 0.0 : c.getProbability();
 	}
 
 	/**************************************************************************
 	 * parseSentence()
-	 *   This is the main loop for parsing the sentence into the chart. It will
-	 *   return true if there is at least one successful parse of the sentence.
+	 *   Parse the sentence and remember it for getCharts() and getForest(). It
+	 *   will return true if there is at least one successful parse of the 
+	 *   sentence. Use parse() instead when the parser is shared by threads.
 	 *   
      *   Bug:if last state in charts is not $->S @
      *       this function will return false even if there has successful parse.
@@ -43,113 +260,370 @@ public class EarleyParser
 	 *************************************************************************/
 	public boolean parseSentence(String[] s)
 	{
-		sentence = s;
-		charts = new Chart[sentence.length + 1];
-		for ( int i = 0; i < charts.length; i++ )
-			charts[i] = new Chart();
+		ParseContext c = parse(s);
+		last = c;
+		return c.isAccepted();
+	}
 
-		// Add the initial state " $ -> @ S "
-		String[] start1 = { "@", "S" };
-		RHS startRHS = new RHS(start1);
-		State start = new State("$", startRHS, 0, 0, null);
-		charts[0].addState(start);
+	/**************************************************************************
+	 * parse()
+	 *   Parse the whole sentence and return a new ParseContext with the charts.
+	 *   Its isAccepted() tells if there was a successful parse.
+	 *************************************************************************/
+	public ParseContext parse(String[] s)
+	{
+		return parse(s, budget);
+	}
+
+	/**************************************************************************
+	 * parse()
+	 *   The same as parse() above, within the given budget. If the budget is
+	 *   gone over, the ParseContext tells which limit with getExceeded().
+	 *************************************************************************/
+	public ParseContext parse(String[] s, ParseBudget b)
+	{
+		ParseEvent event = new ParseEvent();
+		event.begin();
 
-		for ( int i = 0; i < charts.length; i++ )
+		ParseContext c = begin(b);
+		c.pushAll(s);
+		boolean accepted = c.isAccepted();
+
+		event.end();
+		if ( event.shouldCommit() )
 		{
-			for ( int j = 0; j < charts[i].size(); j++ )
+			event.words = s.length;
+			for ( int k = 0; k <= c.length(); k++ )
+				event.states += c.getChartSize(k);
+			event.accepted = accepted;
+			if ( c.getExceeded() != null )
+				event.exceeded = c.getExceeded().toString();
+			event.commit();
+		}
+
+		if ( c.getListener() != null )
+			c.getListener().parseFinished(c);
+		return c;
+	}
+
+	/**************************************************************************
+	 * begin()
+	 *   Start a parse with no words yet. The words are given to the returned
+	 *   ParseContext one at a time with push().
+	 *************************************************************************/
+	public ParseContext begin()
+	{
+		return begin(budget);
+	}
+
+	public ParseContext begin(ParseBudget b)
+	{
+		return new ParseContext(this, b);
+	}
+
+	/**************************************************************************
+	 * parseAll()
+	 *   Parse every sentence of the batch on the common ForkJoinPool and 
+	 *   return their ParseContexts in the same order as the sentences.
+	 *************************************************************************/
+	public List<ParseContext> parseAll(List<String[]> sentences)
+	{
+		return parseAll(sentences, ForkJoinPool.commonPool());
+	}
+
+	/**************************************************************************
+	 * parseAll()
+	 *   Parse every sentence of the batch using the threads of the pool and 
+	 *   return their ParseContexts in the same order as the sentences.
+	 * 
+	 *   The time to parse a sentence grows quickly with its length, so the 
+	 *   sentences are handed out longest first. Each worker takes the next 
+	 *   sentence as soon as it is done with one, which leaves the short 
+	 *   sentences at the end to fill in around the long ones.
+	 *************************************************************************/
+	public List<ParseContext> parseAll(List<String[]> sentences, ForkJoinPool pool)
+	{
+		final String[][] batch = sentences.toArray(new String[sentences.size()][]);
+		final ParseContext[] results = new ParseContext[batch.length];
+
+		// The sentences, by index, from longest to shortest.
+		final Integer[] order = new Integer[batch.length];
+		for ( int i = 0; i < order.length; i++ )
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b)
 			{
-				State st = charts[i].getState(j);
-				String next_term = st.getAfterDot();
-
-				if ( st.isDotLast() )
-					completer(st);	// State's RHS = ... @
-				else if ( grammar.isPartOfSpeech(next_term) )
-					scanner(st);	// State's RHS = ... @ A ..., where A is a part of speech
-				else
-					predictor(st);	// State's RHS = ... @ A ..., where A is NOT a part of speech
+				return batch[b].length - batch[a].length;
 			}
+		});
+
+		final AtomicInteger next = new AtomicInteger();
+		Runnable worker = new Runnable() {
+			public void run()
+			{
+				int k;
+				while ( ( k = next.getAndIncrement() ) < order.length )
+					results[order[k]] = parse(batch[order[k]]);
+			}
+		};
+
+		int workers = Math.min(pool.getParallelism(), batch.length);
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[workers];
+		for ( int i = 0; i < workers; i++ )
+			tasks[i] = pool.submit(worker);
+		for ( int i = 0; i < workers; i++ )
+			tasks[i].join();
+
+		return Arrays.asList(results);
+	}
+
+	/**************************************************************************
+	 * close()
+	 *   This is the main loop for finishing the k-th chart. Every state in the
+	 *   chart, including those added along the way, is predicted from or 
+	 *   completed. States waiting on a part of speech are left for scan().
+	 * 
+	 *   A state waiting on a nullable symbol is also moved past the symbol 
+	 *   straight away (Aycock and Horspool, 2002). Otherwise a state that 
+	 *   starts waiting on the symbol after the symbol's empty derivation was
+	 *   completed in this chart would never be moved past it. The moved 
+	 *   state's back-pointer has no child; its empty derivations are found
+	 *   in the chart when trees are built.
+	 * 
+	 *   The budget of the parse is checked before every state.
+	 *************************************************************************/
+	void close(ParseContext c, int k)
+	{
+		if ( c.isCompact() )
+		{
+			compact.close(c, k);
+			return;
 		}
 
-		// Determine if there was a successful parse.
-		// bug fixed here
-		Chart lastC = charts[charts.length - 1];
-		int k=lastC.size();
-		State parse,finish;
-		do{
-			k--;
-			parse = lastC.getState(k);
-			String[] fin = { "S", "@" };
-			RHS finRHS = new RHS(fin);
-			finish = new State("$", finRHS, 0, charts.length - 1, null);
-		}while(k>0 && !parse.equals(finish));
-		//System.out.println(k);
-		boolean hasAnswer=k>0 ? true : false;
-		return hasAnswer;
+		Chart chart = c.getChart(k);
+		ParseStats stats = c.getStats();
+
+		for ( int j = 0; j < chart.size(); j++ )
+		{
+			c.check(chart.size());
+
+			State st = chart.getState(j);
+			int next_term = compiled.getAfterDot(st.getRule(), st.getDot());
+
+			if ( next_term < 0 )
+				completer(c, st);	// State's RHS = ... @
+			else if ( ! compiled.isPartOfSpeech(next_term) )
+			{
+				predictor(c, st);	// State's RHS = ... @ A ..., where A is NOT a part of speech
+
+				if ( compiled.isNullable(next_term) )
+				{
+					boolean added = chart.addState(new State(st.getRule(), 
+						st.getDot() + 1, st.getI(), k, st, null));
+					if ( stats != null )
+					{
+						stats.nullableSkips++;
+						if ( ! added )
+							stats.duplicates++;
+					}
+				}
+			}
+		}
+	}
+
+	/**************************************************************************
+	 * scan()
+	 *   After this function completes, every lexical rule that matches the 
+	 *   k-th word has been added to the (k+1)-th chart if some state of the
+	 *   k-th chart waits on its part of speech. A scanned word has no 
+	 *   back-pointers, so it is added once however many states wait on it.
+	 *   The k-th chart must be finished.
+	 *************************************************************************/
+	void scan(ParseContext c, int k)
+	{
+		if ( c.isCompact() )
+		{
+			compact.scan(c, k);
+			return;
+		}
+
+		Chart chart = c.getChart(k);
+		Chart next = c.getChart(k + 1);
+		int[] rules = c.getLexicalRules(k);
+		ParseStats stats = c.getStats();
+
+		for ( int a = 0; a < rules.length; a++ )
+		{
+			if ( chart.getWaiting(compiled.getLHS(rules[a])).isEmpty() )
+				continue;
+
+			boolean added = next.addState(new State(rules[a], 1, k, k + 1));
+			if ( stats != null )
+			{
+				stats.scans++;
+				if ( ! added )
+					stats.duplicates++;
+			}
+		}
 	}
 
 	/**************************************************************************
 	 * predictor()
 	 *   After this function completes all possible states that could 
 	 *   potentially continue from the state s is added to the charts.
+	 *   The rules of every symbol in the prediction closure of the symbol 
+	 *   after the dot are added at once, skipping the symbols the chart has 
+	 *   already predicted. If the next word is known, the rules that cannot 
+	 *   start with it are left out.
 	 *************************************************************************/
-	private void predictor(State s)
+	private void predictor(ParseContext c, State s)
 	{
-		String lhs = s.getAfterDot();
-		RHS[] rhs = grammar.getRHS(lhs);
 		int j = s.getJ();
+		Chart chart = c.getChart(j);
+		int symbol = compiled.getAfterDot(s.getRule(), s.getDot());
+		if ( chart.isPredicted(symbol) )
+			return;
+
+		int[] closure = compiled.getClosure(symbol);
+		BitSet next = c.getLookahead(j);
+		ParseStats stats = c.getStats();
 
-		for ( int i = 0; i < rhs.length; i++ )
+		for ( int a = 0; a < closure.length; a++ )
 		{
-			State ns = new State(lhs, rhs[i].addDot(), j, j, s);
-			charts[j].addState(ns);
+			if ( chart.isPredicted(closure[a]) )
+				continue;
+			chart.setPredicted(closure[a]);
+
+			int[] rules = compiled.getRules(closure[a]);
+			for ( int i = 0; i < rules.length; i++ )
+			{
+				if ( next != null && ! compiled.canStartWith(rules[i], next) )
+					continue;
+
+				boolean added = chart.addState(new State(rules[i], 0, j, j));
+				if ( stats != null )
+				{
+					stats.predictions++;
+					if ( ! added )
+						stats.duplicates++;
+				}
+			}
 		}
 	}
 
 	/**************************************************************************
-	 * scanner()
-	 *   After this function completes any rules for the LHS that are 1 term 
-	 *   only and match the word in the sentence will be added to the chart.
+	 * completer()
+	 *   After this function completes, any state in the i-th chart for which
+	 *   the symbol after the dot matches the current state's LHS will be added 
+	 *   to the j-th chart with the dot moved to the right. The i-th chart 
+	 *   keeps those states indexed by the symbol they wait on. Each new state
+	 *   gets a back-pointer to the state it was moved from and to s.
 	 *************************************************************************/
-	private void scanner(State s)
+	private void completer(ParseContext c, State s)
 	{
-		String lhs = s.getAfterDot();
-		RHS[] rhs = grammar.getRHS(lhs);
+		int lhs = compiled.getLHS(s.getRule());
+		Chart chart = c.getChart(s.getJ());
+		ParseStats stats = c.getStats();
 
-		int j = s.getJ();
+		// If the LHS can only complete a chain of states, add the top of the
+		//  chain and skip the rest. The i-th chart must already be finished.
+		if ( leo && s.getI() < s.getJ() )
+		{
+			LeoItem l = leoItem(c, s.getI(), lhs);
+			if ( l.next != null )
+			{
+				boolean added = chart.addState(new State(l.topRule, l.topDot, 
+					l.topOrigin, s.getJ()));
+				chart.addLeoCompletion(l, s);
+				if ( stats != null )
+				{
+					stats.leoCompletions++;
+					if ( ! added )
+						stats.duplicates++;
+				}
+				return;
+			}
+		}
 
-		for ( int a = 0; a < rhs.length; a++ )
+		List<State> waiting = c.getChart(s.getI()).getWaiting(lhs);
+		
+		for ( int a = 0; a < waiting.size(); a++ )
 		{
-			String[] terms = rhs[a].getTerms();
-			if ( terms.length == 1 &&
-					j < sentence.length &&
-					terms[0].compareToIgnoreCase(sentence[j]) == 0 )
+			State st = waiting.get(a);
+			State ns = new State(st.getRule(), st.getDot() + 1,
+								 st.getI(), s.getJ(), st, s);
+			boolean added = chart.addState(ns);
+			if ( stats != null )
 			{
-				State ns = new State(lhs, rhs[a].addDotLast(), j, j + 1, s);
-				charts[j + 1].addState(ns);
+				stats.completions++;
+				if ( ! added )
+					stats.duplicates++;
 			}
 		}
 	}
 
 	/**************************************************************************
-	 * completer()
-	 *   After this function completes, any state in the i-th chart for which
-	 *   the string after the dot matches the current state's LHS will be added 
-	 *   to the j-th chart with the dot moved to the right.
+	 * leoItem()
+	 *   Return the LeoItem of the symbol in the i-th chart, or LeoItem.NONE if
+	 *   the states waiting on it there are not a single state with the symbol
+	 *   last. The chain is followed down to the first chart and symbol whose
+	 *   LeoItem is already known, then the LeoItems are made on the way back.
+	 *   A chart and symbol being worked on count as NONE, so a cycle of unit
+	 *   rules just ends the chain.
 	 *************************************************************************/
-	private void completer(State s)
+	private LeoItem leoItem(ParseContext c, int i, int symbol)
 	{
-		String lhs = s.getLHS();
-		
-		for ( int a = 0; a < charts[s.getI()].size(); a++ )
+		ArrayList<State> path = new ArrayList<State>();
+		ArrayList<Integer> symbols = new ArrayList<Integer>();
+		LeoItem known;
+		int k = i;
+		int sym = symbol;
+
+		while ( true )
 		{
-			State st = charts[s.getI()].getState(a);
-			String after = st.getAfterDot();
-			if ( after != null && lhs.compareTo(after) == 0 )
+			Chart chart = c.getChart(k);
+			known = chart.getLeo(sym);
+			if ( known != null )
+				break;
+
+			chart.setLeo(sym, LeoItem.NONE);
+
+			List<State> waiting = chart.getWaiting(sym);
+			if ( waiting.size() != 1 )
+			{
+				known = LeoItem.NONE;
+				break;
+			}
+
+			State w = waiting.get(0);
+			if ( ! compiled.isComplete(w.getRule(), w.getDot() + 1) )
 			{
-				State ns = new State(st.getLHS(), st.getRHS().moveDot(),
-									 st.getI(), s.getJ(), s);
-				charts[s.getJ()].addState(ns);
+				known = LeoItem.NONE;
+				break;
 			}
+
+			path.add(w);
+			symbols.add(sym);
+			k = w.getI();
+			sym = compiled.getLHS(w.getRule());
 		}
+
+		for ( int a = path.size() - 1; a >= 0; a-- )
+		{
+			State w = path.get(a);
+			LeoItem l;
+			if ( known == LeoItem.NONE )
+				l = new LeoItem(w, null, w.getRule(), w.getDot() + 1, w.getI());
+			else
+				l = new LeoItem(w, known, known.topRule, known.topDot, known.topOrigin);
+
+			// The chart of the a-th waiting state is the origin of the one
+			//  before it, or the i-th chart for the first.
+			int chartIndex = ( a == 0 ) ? i : path.get(a - 1).getI();
+			c.getChart(chartIndex).setLeo(symbols.get(a), l);
+			known = l;
+		}
+
+		return known;
 	}
-}
\ No newline at end of file
+}
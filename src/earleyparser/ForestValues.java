@@ -0,0 +1,134 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * ForestValues
+ *   The ForestValues works out what every node of a ParseForest is worth in
+ *   a Semiring. A word is worth one. A packed node is worth the product of
+ *   its children, times its rule when it belongs to a symbol node; the
+ *   packed nodes of an intermediate node are part of a rule that is counted
+ *   at its symbol node. A node is worth the sum of its packed nodes.
+ *
+ *   The children of a node never span more words than the node, so the
+ *   nodes are worked out from the shortest span to the longest. Nodes over
+ *   the same words can depend on each other through unit and empty rules,
+ *   so each span is gone over again until its values settle. Without such
+ *   cycles that takes a pass or two. A cycle that keeps the values from
+ *   settling, as it does when counting, is given up on and the values are
+ *   marked as not settled: for an exact semiring once the span has had as
+ *   many passes as it has nodes, otherwise after MAX_PASSES.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class ForestValues<T>
+{
+	private Semiring<T> semiring;
+	private CompiledGrammar grammar;
+
+	// The value of every node, indexed by the node's index.
+	private Object[] values;
+
+	// False if some span did not settle.
+	private boolean settled;
+
+	// The most passes over one span.
+	final static private int MAX_PASSES = 1000;
+
+	ForestValues(ParseForest forest, Semiring<T> s)
+	{
+		semiring = s;
+		grammar = forest.getGrammar();
+		settled = true;
+
+		List<ParseForest.Node> nodes = forest.getNodes();
+		values = new Object[nodes.size()];
+		for ( int a = 0; a < nodes.size(); a++ )
+			values[a] = nodes.get(a).isWord() ? s.one() : s.zero();
+
+		ArrayList<ArrayList<ParseForest.Node>> spans = bySpan(nodes);
+		for ( int a = 0; a < spans.size(); a++ )
+		{
+			ArrayList<ParseForest.Node> span = spans.get(a);
+
+			int passes = MAX_PASSES;
+			if ( s.isExact() )
+				passes = Math.min(passes, span.size() + 1);
+
+			boolean changed = true;
+			for ( int pass = 0; changed && pass < passes; pass++ )
+			{
+				changed = false;
+				for ( int b = 0; b < span.size(); b++ )
+					changed |= update(span.get(b));
+			}
+			settled &= ! changed;
+		}
+	}
+
+	/**************************************************************************
+	 * bySpan()
+	 *   Group the nodes that are not words by the number of words they span.
+	 *   Within a span, nodes created later are mostly below the ones created
+	 *   earlier, so they come first.
+	 *************************************************************************/
+	static ArrayList<ArrayList<ParseForest.Node>> bySpan(List<ParseForest.Node> nodes)
+	{
+		ArrayList<ArrayList<ParseForest.Node>> spans =
+			new ArrayList<ArrayList<ParseForest.Node>>();
+		for ( int a = nodes.size() - 1; a >= 0; a-- )
+		{
+			ParseForest.Node n = nodes.get(a);
+			int span = n.getJ() - n.getI();
+			while ( spans.size() <= span )
+				spans.add(new ArrayList<ParseForest.Node>());
+			if ( ! n.isWord() )
+				spans.get(span).add(n);
+		}
+		return spans;
+	}
+
+	/**************************************************************************
+	 * update()
+	 *   Sum the packed nodes of n with the values known so far. Return true if
+	 *   the value of n has not settled yet.
+	 *************************************************************************/
+	private boolean update(ParseForest.Node n)
+	{
+		T sum = semiring.zero();
+		List<ParseForest.Packed> packed = n.getPacked();
+		for ( int a = 0; a < packed.size(); a++ )
+		{
+			ParseForest.Packed p = packed.get(a);
+			T v = n.isIntermediate() ? semiring.one()
+									 : semiring.rule(grammar, p.getRule());
+			v = semiring.times(v, value(p.getLeft()));
+			v = semiring.times(v, value(p.getRight()));
+			sum = semiring.plus(sum, v);
+		}
+
+		T old = get(n);
+		values[n.getIndex()] = sum;
+		return ! semiring.isSettled(old, sum);
+	}
+
+	private T value(ParseForest.Node n)
+	{
+		if ( n == null )
+			return semiring.one();
+		return get(n);
+	}
+
+	@SuppressWarnings("unchecked")
+	T get(ParseForest.Node n)
+	{
+		return (T) values[n.getIndex()];
+	}
+
+	boolean isSettled()
+	{
+		return settled;
+	}
+}
@@ -21,6 +21,9 @@ public class Grammar
 	// An array of LHS's that are Parts of Speech. 
 	Vector<String> POS;
 
+	// The compiled form of this grammar, created the first time it is needed.
+	private CompiledGrammar compiled;
+
 	public Grammar()
 	{
 		Rules = new HashMap<String, RHS[]>();
@@ -40,4 +43,17 @@ public class Grammar
 	{
 		return POS.contains(s);
 	}
+
+	/**************************************************************************
+	 * compile()
+	 *   Return the CompiledGrammar for this grammar. The rules must not be 
+	 *   changed after the first call. The CompiledGrammar never changes, so 
+	 *   it can be shared by any number of parsers and threads.
+	 *************************************************************************/
+	public synchronized CompiledGrammar compile()
+	{
+		if ( compiled == null )
+			compiled = new CompiledGrammar(this);
+		return compiled;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * IntColumn
+ *   An IntColumn is a growable column of ints, kept either in an int[] on
+ *   the heap or in a direct ByteBuffer off the heap. A CompactChart keeps
+ *   each field of its states in one, so a state costs a few ints instead of
+ *   an object, and off the heap the garbage collector never sees them at
+ *   all. The column doubles in size when it is full, up to MAX_CAPACITY
+ *   ints, the most a direct ByteBuffer can hold.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+class IntColumn
+{
+	// Exactly one of these holds the ints.
+	private int[] heap;
+	private IntBuffer direct;
+
+	private int capacity;
+
+	// The most ints a column can hold.
+	final static int MAX_CAPACITY = Integer.MAX_VALUE / 4;
+
+	IntColumn(boolean offHeap, int capacity)
+	{
+		this.capacity = Math.min(Math.max(capacity, 1), MAX_CAPACITY);
+		if ( offHeap )
+			direct = allocate(this.capacity);
+		else
+			heap = new int[this.capacity];
+	}
+
+	private static IntBuffer allocate(int capacity)
+	{
+		return ByteBuffer.allocateDirect(capacity * 4)
+						 .order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	int get(int i)
+	{
+		if ( heap != null )
+			return heap[i];
+		return direct.get(i);
+	}
+
+	void set(int i, int value)
+	{
+		if ( i >= capacity )
+			grow(i + 1);
+
+		if ( heap != null )
+			heap[i] = value;
+		else
+			direct.put(i, value);
+	}
+
+	/**************************************************************************
+	 * grow()
+	 *   Make room for at least n ints, keeping the ones already set. Throws
+	 *   an IllegalStateException if n is more than MAX_CAPACITY.
+	 *************************************************************************/
+	private void grow(int n)
+	{
+		if ( n < 0 || n > MAX_CAPACITY )
+			throw new IllegalStateException(
+				"A column cannot hold more than " + MAX_CAPACITY + " ints");
+
+		int c = capacity;
+		while ( c < n )
+			c = ( c > MAX_CAPACITY / 2 ) ? MAX_CAPACITY : c * 2;
+
+		if ( heap != null )
+		{
+			int[] bigger = new int[c];
+			System.arraycopy(heap, 0, bigger, 0, capacity);
+			heap = bigger;
+		}
+		else
+		{
+			IntBuffer bigger = allocate(c);
+			direct.clear();
+			bigger.put(direct);
+			direct = bigger;
+		}
+		capacity = c;
+	}
+
+	/**************************************************************************
+	 * bytes()
+	 *   The bytes the column takes up, used or not.
+	 *************************************************************************/
+	long bytes()
+	{
+		return 4L * capacity;
+	}
+}
@@ -0,0 +1,45 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * LeoItem
+ *   A LeoItem records, for one chart and one symbol B, that exactly one state
+ *   of the chart waits on B, and that B is the last symbol of that state's
+ *   rule. Completing B back to this chart can then only advance that one
+ *   state, which becomes complete, which in turn can only advance the one
+ *   state waiting on its LHS in its own chart, and so on. The LeoItem keeps
+ *   the whole chain and the state at the top of it, so the completer can add
+ *   the top state directly instead of every state on the way (Leo, 1991).
+ *   This makes right-recursive rules parse in linear time.
+ *
+ *   The states that were skipped are put back into the chart by
+ *   Chart.expandLeo() when trees are asked for.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+class LeoItem
+{
+	// Marks a chart and symbol that have no LeoItem.
+	final static LeoItem NONE = new LeoItem(null, null, -1, -1, -1);
+
+	// The one state waiting on the symbol.
+	State waiting;
+
+	// The LeoItem for the LHS of the waiting state in its origin chart, or
+	//  null if the chain ends here.
+	LeoItem next;
+
+	// The completed state at the top of the chain, without its j.
+	int topRule;
+	int topDot;
+	int topOrigin;
+
+	LeoItem(State waiting, LeoItem next, int topRule, int topDot, int topOrigin)
+	{
+		this.waiting = waiting;
+		this.next = next;
+		this.topRule = topRule;
+		this.topDot = topDot;
+		this.topOrigin = topOrigin;
+	}
+}
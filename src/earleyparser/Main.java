@@ -81,7 +81,7 @@ public class Main
 		for ( int i = 0; i < pt.size(); i++ )
 		{
 			System.out.println("Parse Tree " + i + ":");
-			System.out.println((ParseTree) pt.get(i));
+			System.out.println(pt.get(i));
 		}
 
 		if ( pt.size() == 0 )
@@ -0,0 +1,157 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * ParseBudget
+ *   A ParseBudget puts limits on the work of a parse, so that one bad
+ *   sentence cannot take minutes or all of the memory. It can limit the
+ *   number of states in any one chart, the number of states in all of the
+ *   charts, the time the parse may take and the number of trees listed. It
+ *   can also be cancelled from another thread at any time.
+ *
+ *   A limit of 0 means no limit. A parse that goes over a limit stops where
+ *   it is. Its ParseContext then tells which limit was hit (getExceeded()),
+ *   accepts nothing and has no trees. Listing the trees of a parse that goes
+ *   over the tree limit or the time limit returns the trees listed so far.
+ *
+ *   The time limit applies to each call that does the work on its own: a
+ *   whole EarleyParser.parse(), each push() or edit() of a ParseContext, 
+ *   finishing its last chart for isAccepted() or getCharts(), and each 
+ *   listing of trees. The time between such calls, as while a caller waits
+ *   for the next word to push, is not counted. The same ParseBudget may be
+ *   given to any number of parses; cancelling it cancels all of them.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+public class ParseBudget
+{
+	/**************************************************************************
+	 * Limit
+	 *   The limits a parse can go over.
+	 *************************************************************************/
+	public enum Limit
+	{
+		STATES_PER_CHART,
+		STATES,
+		TIME,
+		TREES,
+		CANCELLED
+	}
+
+	private int maxStatesPerChart;
+	private long maxStates;
+	private long timeoutMillis;
+	private int maxTrees;
+	private volatile boolean cancelled;
+
+	public int getMaxStatesPerChart()
+	{
+		return maxStatesPerChart;
+	}
+
+	public void setMaxStatesPerChart(int max)
+	{
+		maxStatesPerChart = max;
+	}
+
+	public long getMaxStates()
+	{
+		return maxStates;
+	}
+
+	public void setMaxStates(long max)
+	{
+		maxStates = max;
+	}
+
+	public long getTimeoutMillis()
+	{
+		return timeoutMillis;
+	}
+
+	public void setTimeoutMillis(long millis)
+	{
+		timeoutMillis = millis;
+	}
+
+	public int getMaxTrees()
+	{
+		return maxTrees;
+	}
+
+	/**************************************************************************
+	 * setMaxTrees()
+	 *   Limit the number of trees a parse lists. Asking for more trees than
+	 *   this returns the first max of them and counts as going over.
+	 *************************************************************************/
+	public void setMaxTrees(int max)
+	{
+		maxTrees = max;
+	}
+
+	/**************************************************************************
+	 * cancel()
+	 *   Stop every parse using this budget as soon as it next checks, which
+	 *   it does every few states. This may be called from any thread.
+	 *************************************************************************/
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**************************************************************************
+	 * getDeadline()
+	 *   Return the System.nanoTime() by which a parse starting now must end,
+	 *   or Long.MAX_VALUE if there is no time limit.
+	 *************************************************************************/
+	long getDeadline()
+	{
+		if ( timeoutMillis <= 0 )
+			return Long.MAX_VALUE;
+		return System.nanoTime() + timeoutMillis * 1000000L;
+	}
+
+	/**************************************************************************
+	 * Clock
+	 *   This is a helper class. It times one call that works within the
+	 *   budget, from when it is started. check() throws once the budget is
+	 *   cancelled or the time is up; tick() does the same, but only reads the
+	 *   clock every 1024 ticks, so it can be called for every step.
+	 *************************************************************************/
+	static class Clock
+	{
+		private ParseBudget budget;
+		private long deadline;
+		private int ticks;
+
+		Clock(ParseBudget b)
+		{
+			budget = b;
+			start();
+		}
+
+		void start()
+		{
+			deadline = budget.getDeadline();
+		}
+
+		void tick()
+		{
+			if ( ( ++ticks & 1023 ) == 0 )
+				check();
+		}
+
+		void check()
+		{
+			if ( budget.isCancelled() )
+				throw new BudgetExceededException(Limit.CANCELLED);
+			if ( System.nanoTime() - deadline > 0 )
+				throw new BudgetExceededException(Limit.TIME);
+		}
+	}
+}
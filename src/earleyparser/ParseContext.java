@@ -0,0 +1,617 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * ParseContext
+ *   The ParseContext holds everything that belongs to one parse of one
+ *   sentence: the words, the lexical rules that match them and the charts.
+ *   The EarleyParser creates a new one for every sentence and keeps nothing
+ *   about the sentence itself, so one parser, and one grammar, can parse
+ *   sentences on many threads at once. A single ParseContext is only ever
+ *   used by one thread at a time.
+ *
+ *   Words can be pushed onto a ParseContext one at a time. Each push scans
+ *   the new word into a new chart and finishes that chart; the charts before
+ *   it are not touched. After every push the ParseContext tells whether the
+ *   words so far can still be the start of a sentence (isViable()) and
+ *   whether they already are a whole sentence (isAccepted()).
+ *
+ *   The words can also be edited in place: replaced, inserted or deleted at
+ *   any position. The k-th chart only depends on the words before k, so an
+ *   edit at position k keeps the charts 0 to k and only redoes the charts
+ *   after them, pushing the new words and the rest of the old ones again.
+ *   The work of an edit is that of the part of the sentence after it.
+ * 
+ *   A chart is only finished once the word after it is known, so the 
+ *   predictor can leave out the rules that cannot start with that word. 
+ *   Until then it only holds the states the scanner put in it. The last 
+ *   chart is finished without knowing the next word when it is asked for.
+ * 
+ *   A ParseContext may have a ParseBudget. The parser calls check() for 
+ *   every state it works on, which throws a BudgetExceededException once a
+ *   limit is gone over. The ParseContext catches it, remembers the limit and
+ *   does no more work; from then on it accepts nothing and has no trees. An
+ *   edit at or before the chart where it stopped builds that chart again, 
+ *   so the parse goes on with the new words. A parse that stopped before the
+ *   edit stays stopped, and has to be started again with begin(). The time
+ *   limit applies to each call on its own (see ParseBudget).
+ * 
+ *   If the parser counts its steps or has a ParseListener, the ParseContext
+ *   has a ParseStats for the parser to count into, and tells the listener
+ *   about every chart it finishes. Each chart finished is also recorded as a
+ *   ChartEvent for JDK Flight Recorder.
+ *
+ *   If the parser's storage is COLUMNS or OFF_HEAP, the charts are kept as
+ *   CompactCharts and built by a CompactParser. They are only turned into
+ *   Charts when getCharts(), the forest or the trees are asked for. If it 
+ *   is RECOGNIZE, the CompactCharts keep no back-pointers, so they can only
+ *   tell whether the sentence is accepted: getCharts(), and so the forest 
+ *   and the trees of an accepted sentence, throw an IllegalStateException.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Vector;
+
+public class ParseContext
+{
+	private EarleyParser parser;
+	private CompiledGrammar grammar;
+
+	// The words pushed so far, the lexical rules that match each one and
+	//  the Parts of Speech of those rules.
+	private ArrayList<String> sentence;
+	private ArrayList<int[]> lexical;
+	private ArrayList<BitSet> lookahead;
+
+	// One more chart than there are words. Only one of the lists is used,
+	//  as the parser's storage says.
+	private ArrayList<Chart> charts;
+	private ArrayList<CompactChart> compact;
+	private CompactChart.Columns columns;
+
+	// The CompactCharts turned into Charts, or null if they have changed
+	//  since they last were.
+	private Chart[] converted;
+
+	// The number of charts that are finished. The charts after them only 
+	//  hold the states scanned into them.
+	private int finished;
+
+	// The limits of this parse and the clock that times each call, or null
+	//  if it has none.
+	private ParseBudget budget;
+	private ParseBudget.Clock clock;
+
+	// The limit this parse went over, or null. If it went over while 
+	//  parsing, it is stopped at the chart it was working on.
+	private ParseBudget.Limit exceeded;
+	private boolean stopped;
+	private int stoppedAt;
+
+	// The states in the finished charts.
+	private long states;
+
+	// The counts of the parser's steps and the listener, or null.
+	private ParseStats stats;
+	private ParseListener listener;
+
+	ParseContext(EarleyParser p, ParseBudget b)
+	{
+		parser = p;
+		budget = b;
+		if ( b != null )
+			clock = new ParseBudget.Clock(b);
+		listener = p.getListener();
+		if ( p.isCounting() || listener != null )
+			stats = new ParseStats();
+		grammar = p.getCompiledGrammar();
+		sentence = new ArrayList<String>();
+		lexical = new ArrayList<int[]>();
+		lookahead = new ArrayList<BitSet>();
+
+		if ( p.getStorage() == EarleyParser.Storage.STATES )
+			charts = new ArrayList<Chart>();
+		else
+		{
+			compact = new ArrayList<CompactChart>();
+			columns = new CompactChart.Columns(
+				p.getStorage() == EarleyParser.Storage.OFF_HEAP,
+				p.getStorage() != EarleyParser.Storage.RECOGNIZE);
+		}
+		addChart();
+		start();
+	}
+
+	// Add the initial state " $ -> @ S " to the first chart.
+	private void start()
+	{
+		if ( compact != null )
+			compact.get(0).addState(CompiledGrammar.START_RULE, 0, 0);
+		else
+			charts.get(0).addState(new State(CompiledGrammar.START_RULE, 0, 0, 0));
+	}
+
+	private void addChart()
+	{
+		if ( compact != null )
+			compact.add(new CompactChart(grammar, columns));
+		else
+			charts.add(new Chart(grammar));
+	}
+
+	private void removeChart()
+	{
+		if ( compact != null )
+			compact.remove(compact.size() - 1).remove();
+		else
+			charts.remove(charts.size() - 1);
+	}
+
+	private int chartCount()
+	{
+		return ( compact != null ) ? compact.size() : charts.size();
+	}
+
+	/**************************************************************************
+	 * isCompact()
+	 *   True if the charts are kept as CompactCharts.
+	 *************************************************************************/
+	boolean isCompact()
+	{
+		return compact != null;
+	}
+
+	public CompiledGrammar getGrammar()
+	{
+		return grammar;
+	}
+
+	public String[] getSentence()
+	{
+		return sentence.toArray(new String[sentence.size()]);
+	}
+
+	public int length()
+	{
+		return sentence.size();
+	}
+
+	/**************************************************************************
+	 * getCharts()
+	 *   Return the charts. If the parser skipped states with Leo's 
+	 *   optimisation, they are put back first, so the charts are the same as
+	 *   they would have been without it. CompactCharts are turned into 
+	 *   Charts, once for every change to the sentence. Charts without 
+	 *   back-pointers cannot be turned into Charts.
+	 *************************************************************************/
+	public Chart[] getCharts()
+	{
+		finishLast();
+		if ( compact != null )
+		{
+			if ( columns.links == null )
+				throw new IllegalStateException(
+					"The charts were only kept to recognize the sentence");
+
+			if ( converted == null )
+			{
+				converted = new Chart[compact.size()];
+				for ( int k = 0; k < compact.size(); k++ )
+					converted[k] = compact.get(k).toChart(k, converted);
+			}
+			return converted.clone();
+		}
+
+		for ( int k = 0; k < charts.size(); k++ )
+			charts.get(k).expandLeo(k);
+		return charts.toArray(new Chart[charts.size()]);
+	}
+
+	Chart getChart(int k)
+	{
+		return charts.get(k);
+	}
+
+	CompactChart getCompactChart(int k)
+	{
+		return compact.get(k);
+	}
+
+	/**************************************************************************
+	 * getChartSize()
+	 *   Return the number of states in the k-th chart, however it is kept.
+	 *************************************************************************/
+	public int getChartSize(int k)
+	{
+		return ( compact != null ) ? compact.get(k).size() : charts.get(k).size();
+	}
+
+	int[] getLexicalRules(int j)
+	{
+		return lexical.get(j);
+	}
+
+	/**************************************************************************
+	 * getLookahead()
+	 *   Return the Parts of Speech of the j-th word, or null if the word is 
+	 *   not known yet.
+	 *************************************************************************/
+	BitSet getLookahead(int j)
+	{
+		if ( j >= lookahead.size() )
+			return null;
+		return lookahead.get(j);
+	}
+
+	/**************************************************************************
+	 * finish()
+	 *   Finish the k-th chart, if it is not finished yet. The charts before it
+	 *   must be finished.
+	 *************************************************************************/
+	private void finish(int k)
+	{
+		if ( finished == k && ! stopped )
+		{
+			ChartEvent event = new ChartEvent();
+			event.begin();
+
+			try
+			{
+				parser.close(this, k);
+			}
+			catch ( BudgetExceededException e )
+			{
+				stop(e, k);
+				return;
+			}
+			int size = getChartSize(k);
+			states += size;
+			finished++;
+
+			event.end();
+			if ( event.shouldCommit() )
+			{
+				event.index = k;
+				event.states = size;
+				event.words = sentence.size();
+				event.commit();
+			}
+
+			if ( stats != null )
+				stats.chartFinished(size);
+			if ( listener != null )
+				listener.chartFinished(this, k);
+		}
+	}
+
+	/**************************************************************************
+	 * finishLast()
+	 *   Finish the last chart, if it is not finished yet, within the time
+	 *   limit of a call of its own.
+	 *************************************************************************/
+	private void finishLast()
+	{
+		int n = chartCount() - 1;
+		if ( finished == n )
+			startClock();
+		finish(n);
+	}
+
+	private void startClock()
+	{
+		if ( clock != null )
+			clock.start();
+	}
+
+	/**************************************************************************
+	 * getStats()
+	 *   Return the counts of the parser's steps so far, or null if the parser
+	 *   does not count them.
+	 *************************************************************************/
+	public ParseStats getStats()
+	{
+		return stats;
+	}
+
+	ParseListener getListener()
+	{
+		return listener;
+	}
+
+	/**************************************************************************
+	 * check()
+	 *   Throw a BudgetExceededException if the chart being worked on, which
+	 *   holds size states, or all of the charts, hold more states than the 
+	 *   budget allows, if the time is up or if the budget was cancelled. The
+	 *   clock is only read every 1024 checks.
+	 *************************************************************************/
+	void check(int size)
+	{
+		if ( budget == null )
+			return;
+
+		int perChart = budget.getMaxStatesPerChart();
+		if ( perChart > 0 && size > perChart )
+			throw new BudgetExceededException(ParseBudget.Limit.STATES_PER_CHART);
+
+		long total = budget.getMaxStates();
+		if ( total > 0 && states + size > total )
+			throw new BudgetExceededException(ParseBudget.Limit.STATES);
+
+		clock.tick();
+	}
+
+	// Stop the parse at the k-th chart.
+	private void stop(BudgetExceededException e, int k)
+	{
+		exceeded = e.getLimit();
+		stopped = true;
+		stoppedAt = k;
+	}
+
+	/**************************************************************************
+	 * getExceeded()
+	 *   Return the limit of the budget this parse went over, or null if it 
+	 *   has not gone over any.
+	 *************************************************************************/
+	public ParseBudget.Limit getExceeded()
+	{
+		return exceeded;
+	}
+
+	/**************************************************************************
+	 * push()
+	 *   Add a word to the end of the sentence. The chart before the word is
+	 *   finished, now that the word is known, and the word is scanned from it
+	 *   into a new chart. Return true if the sentence so far can still be 
+	 *   continued or completed, the same as isViable().
+	 *************************************************************************/
+	public boolean push(String word)
+	{
+		startClock();
+		pushWord(word);
+		return isViable();
+	}
+
+	/**************************************************************************
+	 * pushAll()
+	 *   Push every word and finish the last chart, all within one time 
+	 *   limit, as EarleyParser.parse() does.
+	 *************************************************************************/
+	void pushAll(String[] words)
+	{
+		startClock();
+		for ( int i = 0; i < words.length; i++ )
+			pushWord(words[i]);
+		finish(chartCount() - 1);
+	}
+
+	// A stopped parse keeps the word, for an edit to parse, but does no work.
+	private void pushWord(String word)
+	{
+		int k = sentence.size();
+		int[] rules = grammar.getLexicalRules(word);
+		sentence.add(word);
+		lexical.add(rules);
+		lookahead.add(grammar.getPartsOfSpeech(rules));
+
+		finish(k);
+		addChart();
+		converted = null;
+		if ( stopped )
+			return;
+
+		try
+		{
+			parser.scan(this, k);
+			check(getChartSize(k + 1));
+		}
+		catch ( BudgetExceededException e )
+		{
+			stop(e, k + 1);
+		}
+	}
+
+	/**************************************************************************
+	 * replace()
+	 *   Replace the word at position pos. Return the same as isViable().
+	 *************************************************************************/
+	public boolean replace(int pos, String word)
+	{
+		return edit(pos, 1, new String[] { word });
+	}
+
+	/**************************************************************************
+	 * insert()
+	 *   Insert the words before the word at position pos, or at the end if 
+	 *   pos is the length of the sentence. Return the same as isViable().
+	 *************************************************************************/
+	public boolean insert(int pos, String... words)
+	{
+		return edit(pos, 0, words);
+	}
+
+	/**************************************************************************
+	 * delete()
+	 *   Delete count words starting at position pos. Return the same as 
+	 *   isViable().
+	 *************************************************************************/
+	public boolean delete(int pos, int count)
+	{
+		return edit(pos, count, new String[0]);
+	}
+
+	/**************************************************************************
+	 * edit()
+	 *   Replace the removed words starting at position pos with the words 
+	 *   given. The charts before the pos-th are kept, the rest are built 
+	 *   again. The pos-th chart is scanned again, since it was finished for
+	 *   the word that used to be at pos. Return the same as isViable().
+	 * 
+	 *   If the parse was stopped at the pos-th chart or after it, the charts
+	 *   it stopped in are built again, so it is no longer stopped. If it was
+	 *   stopped before, it stays stopped.
+	 *************************************************************************/
+	public boolean edit(int pos, int removed, String[] words)
+	{
+		if ( stopped && stoppedAt < pos )
+			return false;
+
+		if ( pos < 0 || removed < 0 || pos + removed > sentence.size() )
+			throw new IndexOutOfBoundsException("Cannot remove " + removed + 
+				" words at " + pos + " from " + sentence.size() + " words");
+
+		ArrayList<String> rest = new ArrayList<String>(
+			sentence.subList(pos + removed, sentence.size()));
+
+		// Forget everything after the pos-th chart.
+		while ( sentence.size() > pos )
+		{
+			sentence.remove(sentence.size() - 1);
+			lexical.remove(lexical.size() - 1);
+			lookahead.remove(lookahead.size() - 1);
+			removeChart();
+		}
+		converted = null;
+
+		// The limit a listing of the trees went over, or the one the parse
+		//  stopped at in the charts that are built again, no longer applies.
+		boolean rebuild = ( finished > pos || stopped );
+		exceeded = null;
+		stopped = false;
+		startClock();
+
+		// Take the pos-th chart back to the states scanned into it.
+		if ( rebuild )
+		{
+			removeChart();
+			addChart();
+			if ( pos == 0 )
+				start();
+			else
+				parser.scan(this, pos - 1);
+			finished = pos;
+		}
+
+		states = 0;
+		for ( int k = 0; k < finished; k++ )
+			states += getChartSize(k);
+
+		for ( int i = 0; i < words.length; i++ )
+			pushWord(words[i]);
+		for ( int i = 0; i < rest.size(); i++ )
+			pushWord(rest.get(i));
+
+		return isViable();
+	}
+
+	/**************************************************************************
+	 * isViable()
+	 *   True if the words so far are the start of some sentence of the
+	 *   grammar. Once this is false, no more words can make the sentence
+	 *   acceptable.
+	 *************************************************************************/
+	public boolean isViable()
+	{
+		if ( stopped )
+			return false;
+		return getChartSize(chartCount() - 1) > 0;
+	}
+
+	/**************************************************************************
+	 * isAccepted()
+	 *   True if there is at least one successful parse of the words so far,
+	 *   that is if the last chart holds " $ -> S @ " spanning them all.
+	 *************************************************************************/
+	public boolean isAccepted()
+	{
+		int n = chartCount() - 1;
+		finishLast();
+		if ( stopped )
+			return false;
+		if ( compact != null )
+			return compact.get(n).find(CompiledGrammar.START_RULE, 1, 0) >= 0;
+		State finish = new State(CompiledGrammar.START_RULE, 1, 0, n);
+		return charts.get(n).getState(finish) != null;
+	}
+
+	/**************************************************************************
+	 * getForest()
+	 *   Build the shared packed parse forest of the sentence. The forest holds
+	 *   every parse tree of the sentence without listing them.
+	 *************************************************************************/
+	public ParseForest getForest()
+	{
+		if ( ! isAccepted() )
+			return new ParseForest(grammar);
+		return new ParseForest(grammar, getCharts());
+	}
+
+	/**************************************************************************
+	 * getBestTree()
+	 *   Return the most probable parse tree of the sentence, or null if it has
+	 *   no parse.
+	 *************************************************************************/
+	public ParseTree getBestTree()
+	{
+		return getForest().getBestTree();
+	}
+
+	/**************************************************************************
+	 * getProbability()
+	 *   Return the probability of the sentence, the sum over all of its parse
+	 *   trees of the product of the probabilities of their rules.
+	 *************************************************************************/
+	public double getProbability()
+	{
+		return getForest().getProbability();
+	}
+
+	/**************************************************************************
+	 * getTreeCount()
+	 *   Return the number of parse trees of the sentence, counted over the 
+	 *   forest without listing them. It is the number of trees getTrees() 
+	 *   lists without a budget, even if cycles of unit or empty rules are cut.
+	 *************************************************************************/
+	public BigInteger getTreeCount()
+	{
+		return getForest().getTreeCount();
+	}
+
+	/**************************************************************************
+	 * getTrees()
+	 *   Return every parse tree of the sentence, listed from the forest. With
+	 *   a budget, the listing stops at the tree limit or when the time is up,
+	 *   and the trees listed so far are returned.
+	 *************************************************************************/
+	public Vector<ParseTree> getTrees()
+	{
+		ParseForest forest = getForest();
+		if ( budget == null )
+			return forest.firstN(Integer.MAX_VALUE);
+
+		Vector<ParseTree> trees = new Vector<ParseTree>();
+		Iterator<ParseTree> it = forest.iterator();
+		int max = budget.getMaxTrees();
+		startClock();
+		try
+		{
+			while ( it.hasNext() )
+			{
+				if ( max > 0 && trees.size() == max )
+					throw new BudgetExceededException(ParseBudget.Limit.TREES);
+				clock.check();
+				trees.add(it.next());
+			}
+		}
+		catch ( BudgetExceededException e )
+		{
+			exceeded = e.getLimit();
+		}
+		return trees;
+	}
+}
@@ -0,0 +1,35 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * ParseEvent
+ *   A JDK Flight Recorder event for parsing one sentence with 
+ *   EarleyParser.parse(). It is only filled in and committed while a 
+ *   recording has the event enabled.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("earleyparser.Parse")
+@Label("Earley Parse")
+@Category("Earley Parser")
+@Description("A sentence was parsed")
+class ParseEvent extends Event
+{
+	@Label("Words")
+	int words;
+
+	@Label("States")
+	long states;
+
+	@Label("Accepted")
+	boolean accepted;
+
+	@Label("Budget Exceeded")
+	String exceeded;
+}
@@ -0,0 +1,620 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * ParseForest
+ *   The ParseForest is a shared packed parse forest (SPPF) of a sentence,
+ *   built straight from the charts produced by the EarleyParser. It holds
+ *   every parse tree of the sentence at once, in space polynomial in the
+ *   length of the sentence, no matter how many trees there are.
+ *
+ *   There is one symbol node for every symbol that derives the words i to j,
+ *   and one node for every word. The ways a symbol node can be derived are
+ *   its packed nodes, one for each rule and pivot. A packed node has at most
+ *   two children: the right one is the node of the last symbol of the rule,
+ *   the left one is the node for the rest of the rule. When the rest of the
+ *   rule is more than one symbol, the left child is an intermediate node
+ *   (a rule with the dot after its first symbols) that is itself packed.
+ *   Nodes that can be derived in the same way are shared.
+ *
+ *   Only the nodes that can be reached from the root " $ [0, n] " are built.
+ *
+ *   The trees of the forest are listed one at a time by iterating over the
+ *   forest, and firstN() stops after the first k of them.
+ *
+ *   If the rules of the grammar have probabilities, getBestTree() returns 
+ *   the most probable tree and getProbability() the probability of the 
+ *   sentence, both worked out over the forest without listing its trees.
+ *
+ *   getTreeCount() counts the trees the iterator would list, and more 
+ *   generally evaluate() works out what the forest is worth in any 
+ *   Semiring, again without listing them.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+public class ParseForest implements Iterable<ParseTree>
+{
+	private CompiledGrammar grammar;
+	private Chart[] charts;
+
+	// The root " $ [0, n] ", or null if the sentence has no parse.
+	private Node root;
+
+	// Every node of the forest, keyed by what it derives, and in the order 
+	//  they were created.
+	private HashMap<Key, Node> nodes;
+	private ArrayList<Node> created;
+
+	// The best trees and inside probabilities, once they are asked for.
+	private Viterbi viterbi;
+
+	// The nodes that have been created but do not have their packed nodes
+	//  worked out yet.
+	private ArrayDeque<Node> pending;
+
+	private int packedCount;
+
+	public ParseForest(CompiledGrammar g, Chart[] c)
+	{
+		grammar = g;
+		charts = c;
+		nodes = new HashMap<Key, Node>();
+		created = new ArrayList<Node>();
+		pending = new ArrayDeque<Node>();
+
+		int n = charts.length - 1;
+		State finish = new State(CompiledGrammar.START_RULE, 1, 0, n);
+		if ( charts[n].getState(finish) != null )
+		{
+			root = symbolNode(CompiledGrammar.START_SYMBOL, 0, n);
+			while ( ! pending.isEmpty() )
+				expand(pending.removeFirst());
+		}
+
+		// The charts are not needed once the forest is built.
+		charts = null;
+		pending = null;
+	}
+
+	/**************************************************************************
+	 * An empty forest, for a sentence that has no parse.
+	 *************************************************************************/
+	ParseForest(CompiledGrammar g)
+	{
+		grammar = g;
+		nodes = new HashMap<Key, Node>();
+		created = new ArrayList<Node>();
+	}
+
+	public CompiledGrammar getGrammar()
+	{
+		return grammar;
+	}
+
+	/**************************************************************************
+	 * getRoot()
+	 *   Return the node " $ [0, n] " that derives the whole sentence, or null
+	 *   if the sentence has no parse.
+	 *************************************************************************/
+	public Node getRoot()
+	{
+		return root;
+	}
+
+	/**************************************************************************
+	 * getNode()
+	 *   Return the node for the symbol that derives the words i to j, or null
+	 *   if there is no such node in the forest.
+	 *************************************************************************/
+	public Node getNode(String symbol, int i, int j)
+	{
+		int s = grammar.getSymbol(symbol);
+		if ( s < 0 )
+			return null;
+		return nodes.get(new Key(-1, s, i, j));
+	}
+
+	public int getNodeCount()
+	{
+		return nodes.size();
+	}
+
+	public int getPackedCount()
+	{
+		return packedCount;
+	}
+
+	/**************************************************************************
+	 * getNodes()
+	 *   Return every node of the forest. A node's index is its position in
+	 *   the list.
+	 *************************************************************************/
+	List<Node> getNodes()
+	{
+		return Collections.unmodifiableList(created);
+	}
+
+	/**************************************************************************
+	 * getBestTree()
+	 *   Return the most probable parse tree of the sentence, or null if the
+	 *   sentence has no parse. If the rules have no probabilities, this is 
+	 *   just one of the trees.
+	 *************************************************************************/
+	public ParseTree getBestTree()
+	{
+		if ( root == null )
+			return null;
+		return getViterbi().getBestTree(root);
+	}
+
+	/**************************************************************************
+	 * getBestProbability()
+	 *   Return the probability of the most probable parse tree, or 0 if the
+	 *   sentence has no parse.
+	 *************************************************************************/
+	public double getBestProbability()
+	{
+		if ( root == null )
+			return 0;
+		return getViterbi().getBest(root);
+	}
+
+	/**************************************************************************
+	 * getProbability()
+	 *   Return the probability of the sentence: the sum of the probabilities
+	 *   of all of its parse trees, or 0 if it has no parse.
+	 *************************************************************************/
+	public double getProbability()
+	{
+		if ( root == null )
+			return 0;
+		return getViterbi().getInside(root);
+	}
+
+	/**************************************************************************
+	 * evaluate()
+	 *   Return what the forest is worth in the semiring: the sum over its 
+	 *   trees of the product of the rules each one uses, or zero() if the 
+	 *   sentence has no parse. Throws an ArithmeticException if cycles of 
+	 *   unit or empty rules keep the values from settling, as they do for
+	 *   Semiring.COUNT: such a sentence has infinitely many derivations, 
+	 *   although the iterator and getTreeCount() leave out the ones that go
+	 *   round a cycle.
+	 *************************************************************************/
+	public <T> T evaluate(Semiring<T> s)
+	{
+		if ( root == null )
+			return s.zero();
+
+		ForestValues<T> values = new ForestValues<T>(this, s);
+		if ( ! values.isSettled() )
+			throw new ArithmeticException("The values of the forest do not settle");
+		return values.get(root);
+	}
+
+	/**************************************************************************
+	 * getTreeCount()
+	 *   Return the number of parse trees of the sentence, or 0 if it has no
+	 *   parse. These are the trees the iterator lists: a tree in which a
+	 *   symbol is below itself over the same words is not counted, so the
+	 *   count is finite even if the grammar has cycles of unit or empty 
+	 *   rules.
+	 *************************************************************************/
+	public BigInteger getTreeCount()
+	{
+		return new TreeCount(this).get();
+	}
+
+	private synchronized Viterbi getViterbi()
+	{
+		if ( viterbi == null )
+			viterbi = new Viterbi(this);
+		return viterbi;
+	}
+
+	/**************************************************************************
+	 * iterator()
+	 *   Return an iterator that builds the parse trees of the forest one at a
+	 *   time, as they are asked for. Each tree is listed once.
+	 *************************************************************************/
+	public Iterator<ParseTree> iterator()
+	{
+		return new TreeIterator(this);
+	}
+
+	/**************************************************************************
+	 * firstN()
+	 *   Return the first k parse trees of the forest, or all of them if there
+	 *   are fewer than k. Only the trees returned are built.
+	 *************************************************************************/
+	public Vector<ParseTree> firstN(int k)
+	{
+		Vector<ParseTree> trees = new Vector<ParseTree>();
+		Iterator<ParseTree> it = iterator();
+		while ( trees.size() < k && it.hasNext() )
+			trees.add(it.next());
+		return trees;
+	}
+
+	/**************************************************************************
+	 * symbolNode()
+	 *   Return the node for the symbol over i to j, creating it if needed.
+	 *************************************************************************/
+	private Node symbolNode(int symbol, int i, int j)
+	{
+		Key k = new Key(-1, symbol, i, j);
+		Node n = nodes.get(k);
+		if ( n == null )
+		{
+			n = new Node(-1, symbol, i, j);
+			nodes.put(k, n);
+			created.add(n);
+			pending.addLast(n);
+		}
+		return n;
+	}
+
+	/**************************************************************************
+	 * itemNode()
+	 *   Return the node for the rule with the dot at dot over i to j. When
+	 *   only one symbol is before the dot, that is the node of the symbol.
+	 *   Otherwise it is an intermediate node, created if needed.
+	 *************************************************************************/
+	private Node itemNode(int rule, int dot, int i, int j)
+	{
+		if ( dot == 1 )
+			return symbolNode(grammar.getRHS(rule)[0], i, j);
+
+		Key k = new Key(rule, dot, i, j);
+		Node n = nodes.get(k);
+		if ( n == null )
+		{
+			n = new Node(rule, dot, i, j);
+			nodes.put(k, n);
+			created.add(n);
+			pending.addLast(n);
+		}
+		return n;
+	}
+
+	/**************************************************************************
+	 * expand()
+	 *   Work out the packed nodes of a node. A symbol node gets the packed
+	 *   nodes of every completed state for the symbol over i to j. A word has
+	 *   none.
+	 *************************************************************************/
+	private void expand(Node n)
+	{
+		if ( n.rule >= 0 )
+		{
+			addPacked(n, n.rule, n.dot);
+			return;
+		}
+
+		List<State> done = charts[n.j].getCompleted(n.symbol);
+		for ( int a = 0; a < done.size(); a++ )
+		{
+			State s = done.get(a);
+			if ( s.getI() == n.i )
+				addPacked(n, s.getRule(), s.getDot());
+		}
+	}
+
+	/**************************************************************************
+	 * addPacked()
+	 *   Add to the node a packed node for every way the rule, with the dot at
+	 *   dot, derives the node's words. The symbol before the dot derives the
+	 *   words k to j, for any pivot k where the rest of the rule derives the
+	 *   words i to k.
+	 *************************************************************************/
+	private void addPacked(Node n, int rule, int dot)
+	{
+		int i = n.i;
+		int j = n.j;
+
+		if ( dot == 0 )
+		{
+			n.add(new Packed(rule, i, null, null));
+			return;
+		}
+
+		int last = grammar.getRHS(rule)[dot - 1];
+
+		// The word of a lexical rule is a leaf of the forest.
+		if ( grammar.isLexical(rule) )
+		{
+			n.add(new Packed(rule, i, null, symbolNode(last, i, j)));
+			return;
+		}
+
+		List<State> done = charts[j].getCompleted(last);
+		boolean[] seen = new boolean[j - i + 1];
+		for ( int a = 0; a < done.size(); a++ )
+		{
+			int k = done.get(a).getI();
+			if ( k < i || seen[k - i] )
+				continue;
+
+			Node left = null;
+			if ( dot == 1 )
+			{
+				if ( k != i )
+					continue;
+			}
+			else
+			{
+				State prior = new State(rule, dot - 1, i, k);
+				if ( charts[k].getState(prior) == null )
+					continue;
+				left = itemNode(rule, dot - 1, i, k);
+			}
+
+			seen[k - i] = true;
+			n.add(new Packed(rule, k, left, symbolNode(last, k, j)));
+		}
+	}
+
+	/**************************************************************************
+	 * toString()
+	 *   This is an over-ride of the toString function. It prints every node
+	 *   that has packed nodes, each packed node on its own line below it.
+	 *************************************************************************/
+	@Override
+	public String toString()
+	{
+		if ( root == null )
+			return "";
+
+		StringBuffer out = new StringBuffer();
+		ArrayDeque<Node> queue = new ArrayDeque<Node>();
+		HashMap<Node, Node> printed = new HashMap<Node, Node>();
+		queue.addLast(root);
+		printed.put(root, root);
+
+		while ( ! queue.isEmpty() )
+		{
+			Node n = queue.removeFirst();
+			if ( n.packed.isEmpty() )
+				continue;
+
+			out.append(n + "\n");
+			for ( int a = 0; a < n.packed.size(); a++ )
+			{
+				Packed p = n.packed.get(a);
+				out.append("\t" + p + "\n");
+
+				Node[] children = { p.left, p.right };
+				for ( int b = 0; b < children.length; b++ )
+				{
+					Node c = children[b];
+					if ( c != null && ! printed.containsKey(c) )
+					{
+						printed.put(c, c);
+						queue.addLast(c);
+					}
+				}
+			}
+		}
+
+		return out.toString();
+	}
+
+	/**************************************************************************
+	 * Node
+	 *   A node of the forest. A symbol node (a symbol, or a word, over i to j)
+	 *   has a rule of -1. An intermediate node is a rule with the dot at dot,
+	 *   over i to j. Words are the only nodes without packed nodes.
+	 *************************************************************************/
+	public class Node
+	{
+		private int rule;
+		private int dot;
+		private int symbol;
+		private int i, j;
+		private int index;
+		private ArrayList<Packed> packed;
+
+		private Node(int rule, int dotOrSymbol, int i, int j)
+		{
+			this.rule = rule;
+			if ( rule < 0 )
+			{
+				this.symbol = dotOrSymbol;
+				this.dot = -1;
+			}
+			else
+			{
+				this.symbol = -1;
+				this.dot = dotOrSymbol;
+			}
+			this.i = i;
+			this.j = j;
+			this.index = created.size();
+			this.packed = new ArrayList<Packed>();
+		}
+
+		private void add(Packed p)
+		{
+			packed.add(p);
+			packedCount++;
+		}
+
+		public boolean isIntermediate()
+		{
+			return rule >= 0;
+		}
+
+		public boolean isWord()
+		{
+			return rule < 0 && packed.isEmpty();
+		}
+
+		/**********************************************************************
+		 * getSymbol()
+		 *   Return the name of the symbol of a symbol node, or null for an
+		 *   intermediate node.
+		 *********************************************************************/
+		public String getSymbol()
+		{
+			if ( rule >= 0 )
+				return null;
+			return grammar.getName(symbol);
+		}
+
+		int getSymbolId()
+		{
+			return symbol;
+		}
+
+		/**********************************************************************
+		 * getRule() and getDot()
+		 *   The dotted rule of an intermediate node. Both are -1 for a symbol
+		 *   node.
+		 *********************************************************************/
+		public int getRule()
+		{
+			return rule;
+		}
+
+		public int getDot()
+		{
+			return dot;
+		}
+
+		public int getI()
+		{
+			return i;
+		}
+
+		public int getJ()
+		{
+			return j;
+		}
+
+		int getIndex()
+		{
+			return index;
+		}
+
+		/**********************************************************************
+		 * getPacked()
+		 *   Return the alternative ways this node is derived. There is more
+		 *   than one if the node is ambiguous.
+		 *********************************************************************/
+		public List<Packed> getPacked()
+		{
+			return Collections.unmodifiableList(packed);
+		}
+
+		public boolean isAmbiguous()
+		{
+			return packed.size() > 1;
+		}
+
+		@Override
+		public String toString()
+		{
+			if ( rule >= 0 )
+				return grammar.toString(rule, dot) + "\t[" + i + ", " + j + "]";
+			return grammar.getName(symbol) + "\t[" + i + ", " + j + "]";
+		}
+	}
+
+	/**************************************************************************
+	 * Packed
+	 *   One way of deriving a node: the rule that is used, and the pivot k
+	 *   where its last symbol starts. The right child is the node of the last
+	 *   symbol over k to j. The left child is the node for the rest of the
+	 *   rule over i to k, or null if the last symbol is the only one. Both
+	 *   are null for a rule with an empty RHS.
+	 *************************************************************************/
+	public class Packed
+	{
+		private int rule;
+		private int pivot;
+		private Node left;
+		private Node right;
+
+		private Packed(int rule, int pivot, Node left, Node right)
+		{
+			this.rule = rule;
+			this.pivot = pivot;
+			this.left = left;
+			this.right = right;
+		}
+
+		public int getRule()
+		{
+			return rule;
+		}
+
+		public int getPivot()
+		{
+			return pivot;
+		}
+
+		public Node getLeft()
+		{
+			return left;
+		}
+
+		public Node getRight()
+		{
+			return right;
+		}
+
+		@Override
+		public String toString()
+		{
+			return grammar.toString(rule, grammar.getRHS(rule).length)
+				   + "\t(" + pivot + ")";
+		}
+	}
+
+	/**************************************************************************
+	 * Key
+	 *   The key of a node in the map of nodes. A symbol node has a rule of -1
+	 *   and the symbol in place of the dot.
+	 *************************************************************************/
+	static private class Key
+	{
+		int rule, dot, i, j;
+
+		Key(int rule, int dot, int i, int j)
+		{
+			this.rule = rule;
+			this.dot = dot;
+			this.i = i;
+			this.j = j;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if ( o == null || o.getClass() != this.getClass() )
+				return false;
+
+			Key k = (Key) o;
+			return rule == k.rule && dot == k.dot && i == k.i && j == k.j;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int h = rule;
+			h = 31 * h + dot;
+			h = 31 * h + i;
+			h = 31 * h + j;
+			return h;
+		}
+	}
+}
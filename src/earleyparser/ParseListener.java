@@ -0,0 +1,28 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * ParseListener
+ *   A ParseListener is told when each chart of a parse is finished and when
+ *   a whole sentence has been parsed. The ParseContext passed in has its 
+ *   ParseStats with the counts so far. The listener is called on the thread
+ *   doing the parse, so a listener shared by parallel parses must be safe 
+ *   to call from many threads.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+public interface ParseListener
+{
+	/**************************************************************************
+	 * chartFinished()
+	 *   The k-th chart of the parse is finished.
+	 *************************************************************************/
+	void chartFinished(ParseContext c, int k);
+
+	/**************************************************************************
+	 * parseFinished()
+	 *   EarleyParser.parse() has parsed every word of the sentence. Parses 
+	 *   that push their words one at a time never finish.
+	 *************************************************************************/
+	void parseFinished(ParseContext c);
+}
@@ -0,0 +1,102 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * ParseStats
+ *   The ParseStats counts the steps of one parse: the states the predictor,
+ *   the scanner and the completer tried to add, how many of those were 
+ *   already in their chart, and how big the charts got. A ParseContext only
+ *   has one if the parser is counting (EarleyParser.setCounting()) or has a
+ *   ParseListener. Otherwise the parser skips every count with a single 
+ *   null test.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+public class ParseStats
+{
+	// The states each step tried to add to a chart.
+	long predictions;
+	long scans;
+	long completions;
+
+	// The completions that went through a LeoItem, skipping its chain.
+	long leoCompletions;
+
+	// The states that were moved past a nullable symbol as it was predicted.
+	long nullableSkips;
+
+	// The states tried that were already in their chart.
+	long duplicates;
+
+	// The finished charts, the states in them, and the most in any one.
+	int charts;
+	long states;
+	int largestChart;
+
+	public long getPredictions()
+	{
+		return predictions;
+	}
+
+	public long getScans()
+	{
+		return scans;
+	}
+
+	public long getCompletions()
+	{
+		return completions;
+	}
+
+	public long getLeoCompletions()
+	{
+		return leoCompletions;
+	}
+
+	public long getNullableSkips()
+	{
+		return nullableSkips;
+	}
+
+	public long getDuplicates()
+	{
+		return duplicates;
+	}
+
+	public int getCharts()
+	{
+		return charts;
+	}
+
+	public long getStates()
+	{
+		return states;
+	}
+
+	public int getLargestChart()
+	{
+		return largestChart;
+	}
+
+	/**************************************************************************
+	 * chartFinished()
+	 *   Count a chart that was just finished, with its size states.
+	 *************************************************************************/
+	void chartFinished(int size)
+	{
+		charts++;
+		states += size;
+		if ( size > largestChart )
+			largestChart = size;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "predictions " + predictions + ", scans " + scans + 
+			   ", completions " + completions + " (Leo " + leoCompletions + 
+			   ", nullable " + nullableSkips + "), duplicates " + duplicates + 
+			   ", charts " + charts + ", states " + states + 
+			   ", largest chart " + largestChart;
+	}
+}
@@ -3,364 +3,387 @@
  * project: EarleyParser with parse trees
  * 
  * ParseTree
- *   The ParseTree is a particualr parse of a sentence. There is a static 
- *   function that will take a grammar and a chart set produced from the 
- *   grammar and will return a vector of ParseTrees. This vector will be empty
- *   if there were not any possible parses, and will contain potentially more 
- *   than one if the sentence is ambiguous.
+ *   The ParseTree is a particular parse of a sentence. The static getTree()
+ *   takes a grammar, a Grammar or its CompiledGrammar, and the charts 
+ *   produced from it, and returns a Vector of every ParseTree of the 
+ *   sentence, without duplicates. The Vector is empty if there was no parse,
+ *   and holds more than one tree if the sentence is ambiguous. Given a 
+ *   ParseBudget, getTree() lists the trees one at a time from a ParseForest 
+ *   and throws a BudgetExceededException as soon as it goes over the tree 
+ *   limit or the time limit, or the budget is cancelled.
  * 
- *   As it stands, the ParseTree class only has two public functins. One is the 
- *   static getTree() that will create a vector of ParseTrees. The other is 
- *   toString() so that you can print the trees.
+ *   Trees can also be had from a ParseForest, by iterating over it or with
+ *   firstN(), and from a ParseContext with getTrees() and getBestTree().
+ *   A ParseTree can be printed with toString(), and compared and hashed by
+ *   the symbols of its nodes.
+ * 
+ *   Nothing about a call to getTree() is kept in static fields. The grammar
+ *   and the subtrees found so far are kept in a context of that call only,
+ *   so trees can be extracted on many threads at once.
+ * 
+ *   Without a budget, getTree() follows the back-pointers of the states 
+ *   exactly, so every path it tries is part of a parse of the sentence. Cycles of unit and empty 
+ *   rules are cut, so a symbol is never below itself over the same words.
+ * 
+ *   The nodes of a tree never change once they are made, and know nothing
+ *   of what is above them. The trees of an ambiguous sentence share every
+ *   subtree they have in common, so only the parts that differ are made for
+ *   each tree.
  * 
  *****************************************************************************/
 package earleyparser;
 
 import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Vector;
 
 public class ParseTree
 {
 	private PTNode root;
-	
-	// The stateList is a stack that describes the state tree we have been 
-	// navigating to determine the parseTree.
-	private Deque<State> stateList;
-
-	static private int ID = 0;
-	static private Chart[] charts;
-	static private Grammar grammar;
 
 	final static private String tab = "\t";
 
 	/**************************************************************************
-	 * All of the constructors for ParseTree are private.  The intended way to 
-	 *  get a ParseTree is to use the static funciton getTree()
+	 * All of the constructors for ParseTree are package-private.  The
+	 *  intended way to get a ParseTree is to use the static funciton
+	 *  getTree(), or to iterate over a ParseForest.
 	 *************************************************************************/
-	private ParseTree()
-	{
-		root = null;
-		stateList = new ArrayDeque<State>();
-	}
-
-	private ParseTree(String s)
+	ParseTree(String s)
 	{
-		root = new PTNode(s, null);
-		stateList = new ArrayDeque<State>();
+		root = new PTNode(s, new PTNode[0]);
 	}
 
-	private ParseTree(String s, State st)
+	ParseTree(String s, List<ParseTree> children)
 	{
-		root = new PTNode(s, null);
-		stateList = new ArrayDeque<State>();
-		stateList.addFirst(st);
+		PTNode[] c = new PTNode[children.size()];
+		for ( int i = 0; i < c.length; i++ )
+			c[i] = children.get(i).root;
+		root = new PTNode(s, c);
 	}
 
 	private ParseTree(PTNode r)
 	{
 		root = r;
-		stateList = new ArrayDeque<State>();
 	}
 
-	private ParseTree getParent()
+	/**********************************************************************
+	 * equals()
+	 *   This is an over-ride of the equals function. Two ParseTrees are equal
+	 *   if thier roots have the same value and all of the children have the 
+	 *   same value.
+	 *********************************************************************/
+	@Override
+	public boolean equals(Object obj)
 	{
-		if ( root.Parent == null )
-			return null;
-		return new ParseTree(root.Parent);
-	}
+		if ( obj == null )
+			return false;
 
-	private ParseTree getChild(int i)
-	{
-		return new ParseTree(root.getChild(i));
+		if ( obj.getClass() != this.getClass() )
+			return false;
+
+		ParseTree pt = (ParseTree) obj;
+
+		return this.root.equals(pt.root);
 	}
 
 	/**************************************************************************
-	 * addChild()
-	 *   If the tree does not have a root yet, this child will become the root.
-	 *   Otherwise it will be added to the root's children.
+	 * hashCode()
+	 *   This is an over-ride of the hashCode function. It agrees with equals()
+	 *   by hashing the values of all of the nodes, so trees can be kept in a
+	 *   hash set.
 	 *************************************************************************/
-	private void addChild(String v)
+	@Override
+	public int hashCode()
 	{
-		if ( root == null )
-			root = new PTNode(v, null);
-		else
-			root.addChild(new PTNode(v, root));
+		return root.hashCode();
 	}
 
 	/**************************************************************************
-	 * copy()
-	 *   This creates a deep copy of the root and the state list. This is used
-	 *   when the path we were taking to get to a parse tree has more then one
-	 *   viable source from our current state.
+	 * symbolTrees()
+	 *   Return every tree of the node built by the completed state s. The
+	 *   chain holds the states above s over the same words, whose LHS may not
+	 *   be below s again over those words.
+	 * 
+	 *   A completed state of a Part of Speech is its word. For any other
+	 *   state the children are found by prefixes(). Without a chain the trees
+	 *   only depend on s, so they are kept and shared by every tree that has
+	 *   s in it.
 	 *************************************************************************/
-	private ParseTree copy()
+	static private List<PTNode> symbolTrees(Context context, State s, Chain chain)
 	{
-		ParseTree t = new ParseTree();
-		t.root = root.copy();
-		t.stateList.addAll(this.stateList);
-		return t;
+		if ( chain == null )
+		{
+			List<PTNode> found = context.found.get(s);
+			if ( found != null )
+				return found;
+		}
+
+		context.check();
+
+		CompiledGrammar grammar = context.grammar;
+		int rule = s.getRule();
+		String name = grammar.getName(grammar.getLHS(rule));
+
+		List<PTNode> trees = new ArrayList<PTNode>();
+		if ( grammar.isPartOfSpeech(grammar.getLHS(rule)) )
+		{
+			PTNode word = new PTNode(grammar.getName(grammar.getRHS(rule)[0]),
+									 new PTNode[0]);
+			trees.add(new PTNode(name, new PTNode[] { word }));
+		}
+		else
+		{
+			List<Children> prefixes = prefixes(context, s, new Chain(s, chain));
+			for ( int a = 0; a < prefixes.size(); a++ )
+				trees.add(new PTNode(name, Children.toArray(prefixes.get(a))));
+		}
+
+		if ( chain == null )
+			context.found.put(s, trees);
+		return trees;
 	}
 
 	/**************************************************************************
-	 * getNodeI()
-	 *   Do a recursive search to find the node with id i. This assumes that 
-	 *   there exists a node with such an id.
+	 * fill()
+	 *   Work out the trees of every completed state below s, from the ones 
+	 *   that span the fewest words to the most. The trees of a state then 
+	 *   only have to go down to the states over the same words, since the 
+	 *   trees of the rest are known, so a deep tree does not need a deep 
+	 *   recursion.
 	 *************************************************************************/
-	private ParseTree getNodeI(int i)
+	static private void fill(Context context, State s)
 	{
-		PTNode p = root;
+		ArrayList<ArrayList<State>> spans = new ArrayList<ArrayList<State>>();
+		HashSet<State> seen = new HashSet<State>();
+		ArrayDeque<State> stack = new ArrayDeque<State>();
+		stack.push(s);
+		seen.add(s);
 
-		while ( p.id != i )
+		while ( ! stack.isEmpty() )
 		{
-			for ( int a = 0; a < p.Children.size(); a++ )
+			State t = stack.pop();
+			if ( context.grammar.getAfterDot(t.getRule(), t.getDot()) < 0 )
 			{
-				if ( i >= ((PTNode) p.Children.get(a)).id )
-				{
-					p = (PTNode) p.Children.get(a);
-					break;
-				}
+				int span = t.getJ() - t.getI();
+				while ( spans.size() <= span )
+					spans.add(new ArrayList<State>());
+				spans.get(span).add(t);
+			}
+
+			Vector<State> steps = getSteps(context, null, t);
+			for ( int a = 0; a < steps.size(); a++ )
+			{
+				if ( seen.add(steps.get(a)) )
+					stack.push(steps.get(a));
 			}
 		}
 
-		return new ParseTree(p);
+		for ( int a = 0; a < spans.size(); a++ )
+		{
+			for ( int b = 0; b < spans.get(a).size(); b++ )
+				symbolTrees(context, spans.get(a).get(b), null);
+		}
 	}
 
 	/**************************************************************************
-	 * getRootID()
-	 *   Returns the id associated with the root.
+	 * prefixes()
+	 *   Return every way of building the children before the dot of the state
+	 *   s, whose node has the chain above it (the node itself first). A state
+	 *   with the dot first has just the empty list. Otherwise every child of a
+	 *   back-pointer of s is put after every prefix of its predecessor, so the
+	 *   children before it are shared, not copied.
 	 *************************************************************************/
-	private int getRootID()
+	static private List<Children> prefixes(Context context, State s, Chain chain)
 	{
-		return root.id;
-	}
-	
-	/**********************************************************************
-	 * equals()
-	 *   This is an over-ride of the equals function. Two ParseTrees are equal
-	 *   if thier roots have the same value and all of the children have the 
-	 *   same value.
-	 *********************************************************************/
-	@Override
-	public boolean equals(Object obj)
-	{
-		if ( obj == null )
-			return false;
-
-		if ( obj.getClass() != this.getClass() )
-			return false;
+		List<Children> prefixes = new ArrayList<Children>();
+		if ( s.getDot() == 0 )
+		{
+			prefixes.add(null);
+			return prefixes;
+		}
 
-		ParseTree pt = (ParseTree) obj;
+		Vector<State> steps = getSteps(context, chain, s);
+		for ( int a = 0; a < steps.size(); a += 2 )
+		{
+			State child = steps.get(a + 1);
+			Chain above = null;
+			if ( child.getI() == chain.state.getI() &&
+				 child.getJ() == chain.state.getJ() )
+				above = chain;
+
+			List<PTNode> trees = symbolTrees(context, child, above);
+			if ( trees.isEmpty() )
+				continue;
+
+			List<Children> before = prefixes(context, steps.get(a), chain);
+			for ( int b = 0; b < before.size(); b++ )
+			{
+				for ( int c = 0; c < trees.size(); c++ )
+					prefixes.add(new Children(trees.get(c), before.get(b)));
+			}
+		}
 
-		return this.root.equals(pt.root);
+		return prefixes;
 	}
-		
+
 	/**************************************************************************
-	 * parseTree()
-	 *   Helper function that takes the current ParseTree and the state we are
-	 *   currently inspecting.
+	 * getSteps()
+	 *   Return the predecessor and the child of every back-pointer of the 
+	 *   state s one after the other. For a symbol that was skipped as
+	 *   nullable, each of its completed states in the same chart that spans
+	 *   no words is a child.
 	 * 
-	 *   ParseTree tree is the entire tree that we are working on building up. 
-	 *   ParseTree child is the current node we are building up that is a 
-	 *   child of ParseTree tree.
-	 *   
-	 *   The tree was started from the right-most leaf. We build up the tree
-	 *   by adding parents (which becomes the root) and adding all their 
-	 *   children. 
-	 *   
-	 *   An important part of creating the parse tree is determining what is 
-	 *   the the correct source state. This implementation uses the stateList
-	 *   for this purpose. The initial state that is in the stateList is
-	 *   "$ -> S @". 
+	 *   A child with the same LHS as a node of the chain over the same words
+	 *   would only go round a cycle of unit or empty rules, so it is left
+	 *   out, as ParseForest does. Each pair is only returned once.
 	 *************************************************************************/
-	static private Vector<ParseTree> parseTree(ParseTree tree, ParseTree child, State currentState)
+	static private Vector<State> getSteps(Context context, Chain chain, State s)
 	{
-		Vector<ParseTree> trees = new Vector<ParseTree>();
-
-		String[] startTerms = { "@", "S" };
-		RHS startRHS = new RHS(startTerms);
-		State start = new State("$", startRHS, 0, 0, null);
+		Vector<State> steps = new Vector<State>();
 
-		// If the current state is the start state, we are done. 
-		if ( currentState.equals(start) )
+		for ( int a = 0; a < s.getBackPointerCount(); a++ )
 		{
-			// The only state in the stateList, the currentState and the start
-			// state are all same.
-			tree.stateList.removeFirst();
-			trees.add(tree);
-			return trees;
-		}
-
-		RHS rhs = currentState.getRHS();
-		boolean addedLHS = false;
-		boolean alreadyRemoved = false;
+			State predecessor = s.getPredecessor(a);
+			State child = s.getChild(a);
+			if ( child != null )
+			{
+				addStep(context, steps, chain, predecessor, child);
+				continue;
+			}
 
-		if ( rhs.isDotLast() )
-		{
-			// This is the currently left-most child of the current node we are
-			// working on. 
-			child.addChild(currentState.getLHS()); 
-			addedLHS = true;
-		}
-		
-		// If the top state on the stack is the same as the currentState (with 
-		//  a dot change) then we remove it. This means that we have backwards
-		//  parsed all of the term that is between the dots.
-		if ( ! rhs.isDotLast() && 
-			 tree.stateList.peek().getRHS().equals(currentState.getRHS().moveDot()) )
-		{
-			tree.stateList.removeFirst();
+			int symbol = context.grammar.getPriorToDot(s.getRule(), s.getDot());
+			List<State> completed = context.charts[s.getJ()].getCompleted(symbol);
+			for ( int b = 0; b < completed.size(); b++ )
+			{
+				if ( completed.get(b).getI() == s.getJ() )
+					addStep(context, steps, chain, predecessor, completed.get(b));
+			}
 		}
-		
-		tree.stateList.addFirst(currentState);
 
-		Vector<State> srcs = currentState.getSources();
+		return steps;
+	}
 
-		if ( grammar.isPartOfSpeech(currentState.getLHS()) )
+	static private void addStep(Context context, Vector<State> steps, Chain chain,
+								State predecessor, State child)
+	{
+		CompiledGrammar grammar = context.grammar;
+		int lhs = grammar.getLHS(child.getRule());
+		for ( Chain p = chain; p != null; p = p.above )
 		{
-			// The currentState is a POS and we don't need these on the stack.
-			//  The stack contains states that are not completely backwards 
-			//  parsed yet and this one will be complete.
-			tree.stateList.removeFirst();
-			String[] terms = currentState.getRHS().getTerms();
-			child.getChild(0).addChild(terms[0]);
-
-			// Select the correct source (the one with the correct i)
-			if ( srcs.size() == 1 )
-				currentState = (State) srcs.get(0);
-			else
-			{
-				State posState = tree.stateList.peekFirst();
-
-				for ( int i = 0; i < srcs.size(); i++ )
-				{
-					// If the state we are currently looking at, matches the 
-					//  the top state in the stateList (with the dot moved 
-					//  one term) then it is the correct source.
-					currentState = (State) srcs.get(i);
-					State moveCurrent = new State(currentState.getLHS(), 
-												  currentState.getRHS().moveDot(), 
-												  currentState.getI(), 
-												  currentState.getJ() + 1, null);
-					if ( moveCurrent.equals(posState) )
-						break;
-				}
-			}
-			
-			srcs = currentState.getSources();
-			rhs = currentState.getRHS();
-			tree.stateList.removeFirst();
-
-			// If the state is not completely parsed, add it to the stateList.
-			if ( currentState.getRHS().getDotPos() > 0 )
-				tree.stateList.addFirst(currentState);
-			
-			alreadyRemoved = true;
-			addedLHS = false;
+			if ( p.state.getI() < child.getI() || p.state.getJ() > child.getJ() )
+				break;
+			if ( grammar.getLHS(p.state.getRule()) == lhs )
+				return;
 		}
 
-		// If the dot is first, the state is completely backwards parsed now.
-		//  If the state has not already been removed from the stateList, do
-		//  so now.
-		if ( rhs.isDotFirst() && ! alreadyRemoved )
-			tree.stateList.removeFirst();
-
-		// For every source of the updated currentState, we may need to attempt a
-		//  backwards parse.
-		for ( int i = 0; i < srcs.size(); i++ )
+		for ( int a = 0; a < steps.size(); a += 2 )
 		{
-			ParseTree treeCopy = tree.copy();
-			ParseTree childCopy = treeCopy.getNodeI(child.getRootID());
-			ParseTree nextChild;
-
-			if ( rhs.isDotFirst() )
-				nextChild = childCopy.getParent();
-			else if ( addedLHS )
-				nextChild = childCopy.getChild(0);
-			else
-				nextChild = childCopy;
-			
-			State nextState = (State) srcs.get(i);
-			String lhs = nextState.getLHS();
-
-			// When the sources list for a state was created during parsing, all of the 
-			//  potential trees were mixed together. This means that some of the 
-			//  sources are not valid for the particular parse tree we are creating.
-			// The conditions were it could be a source are:
-			//    1) The LHS of the potential source is the same as the term prior
-			//       to the dot. This source was produced by the predictor step.
-			//    2) We have just completed parsing the term prior to the dot. This source
-			//       was produced by the completer step. 
-			//
-			// The scanner step does not need to be handled here due to being handled
-			//  when we were handling the POS.
-			if ( currentState.getRHS().getPriorToDot().compareTo(lhs) == 0 || 
-				 ( tree.stateList.peek().getRHS().equals(nextState.getRHS().moveDot()) &&
-				   tree.stateList.peek().getLHS().compareTo(nextState.getLHS()) == 0 ) )
-			{
-				trees.addAll(parseTree(treeCopy, nextChild, nextState));
-			}
+			if ( steps.get(a) == predecessor && steps.get(a + 1) == child )
+				return;
 		}
 
-		return trees;
+		steps.add(predecessor);
+		steps.add(child);
 	}
 
 	/**************************************************************************
 	 * getTree()
 	 *   This starts the parsing of the grammar and charts. It also removes any
-	 *   duplicate trees that might have been produced during the parsing.
-	 *   
+	 *   duplicate trees that might have been produced during the parsing, 
+	 *   such as those of two rules with the same RHS. The trees are kept in a
+	 *   hash set, so each duplicate is found without comparing it to all of 
+	 *   the trees before it.
+	 * 
 	 *   This is one of the two functions that are public and is the correct 
 	 *   to get a ParseTree.
-	 *   
+	 * 
 	 *   Bug:if last state in charts is not $->S @, this function cannot return any result.
 	 *   Bug fixed by @author xxk
 	**************************************************************************/
 	static public Vector<ParseTree> getTree(Grammar g, Chart[] c)
 	{
-		charts = c;
-		grammar = g;
-		
-
-		/*
-		 * bug fixed
-		 */
-		Chart lastC = charts[charts.length - 1];
-		Vector<ParseTree> trees = new Vector<ParseTree>();
-		int k=lastC.size();
-		State parse,finish;
-		do{
-			k--;
-			parse = lastC.getState(k);
-			String[] fin = { "S", "@" };
-			RHS finRHS = new RHS(fin);
-			finish = new State("$", finRHS, 0, charts.length - 1, null);
-		}while(k>0 && !parse.equals(finish));
-		//System.out.println(k);
-		boolean hasTree=k>0 ? true : false;
-		// If there was a successful parse, find all of the possible parse trees.
-		if ( hasTree )
-		{ 
-			Vector<State> srcs = parse.getSources();
-			for ( int i = 0; i < srcs.size(); i++ )
-			{
-				// Find all the trees that could come from this source.
-				State s = (State) srcs.get(i);
-				ParseTree pt = new ParseTree(parse.getLHS(), parse);
-				trees.addAll(parseTree(pt, pt, s));
-			}
+		return getTree(g.compile(), c);
+	}
+
+	/**************************************************************************
+	 * getTree()
+	 *   The same as getTree() above, for a grammar that is only known in its
+	 *   compiled form, such as one loaded from a snapshot.
+	**************************************************************************/
+	static public Vector<ParseTree> getTree(CompiledGrammar g, Chart[] c)
+	{
+		return getTree(g, c, null);
+	}
+
+	/**************************************************************************
+	 * getTree()
+	 *   The same as getTree() above, within the given budget. Only its time 
+	 *   limit, its tree limit and its cancellation apply here. Going over any
+	 *   of them throws a BudgetExceededException.
+	 * 
+	 *   With a budget the trees are listed one at a time from a ParseForest,
+	 *   so the listing stops as soon as there are more trees than the limit,
+	 *   however many trees the sentence has. Duplicates are still removed.
+	 *   The trees may come in another order than without a budget.
+	**************************************************************************/
+	static public Vector<ParseTree> getTree(Grammar g, Chart[] c, ParseBudget budget)
+	{
+		return getTree(g.compile(), c, budget);
+	}
+
+	static public Vector<ParseTree> getTree(CompiledGrammar g, Chart[] c, ParseBudget budget)
+	{
+		if ( budget == null )
+			return getAllTrees(g, c);
+
+		Context context = new Context(g, c, budget);
+		int max = budget.getMaxTrees();
+
+		LinkedHashSet<ParseTree> trees = new LinkedHashSet<ParseTree>();
+		Iterator<ParseTree> it = new ParseForest(g, c).iterator();
+		while ( it.hasNext() )
+		{
+			context.check();
+			trees.add(it.next());
+			if ( max > 0 && trees.size() > max )
+				throw new BudgetExceededException(ParseBudget.Limit.TREES);
 		}
 
-		// Remove any duplicate trees.
-		Vector<ParseTree> noDups = new Vector<ParseTree>();
-		for ( int i = 0; i < trees.size(); i++ )
+		return new Vector<ParseTree>(trees);
+	}
+
+	/**************************************************************************
+	 * getAllTrees()
+	 *   List every tree from the back-pointers of the states, with no budget.
+	**************************************************************************/
+	static private Vector<ParseTree> getAllTrees(CompiledGrammar g, Chart[] c)
+	{
+		Chart[] charts = c;
+		Context context = new Context(g, c, null);
+
+		LinkedHashSet<ParseTree> trees = new LinkedHashSet<ParseTree>();
+
+		// Look for " $ -> S @ " spanning the whole sentence in the last chart.
+		State finish = new State(CompiledGrammar.START_RULE, 1, 0, 
+								 charts.length - 1);
+		State parse = charts[charts.length - 1].getState(finish);
+
+		// If there was a successful parse, find all of the possible parse
+		//  trees, keeping the first of any duplicates.
+		if ( parse != null )
 		{
-			ParseTree pt = (ParseTree) trees.get(i);
-			if ( ! noDups.contains(pt) )
-				noDups.add(pt);
+			fill(context, parse);
+			List<PTNode> roots = symbolTrees(context, parse, null);
+			for ( int i = 0; i < roots.size(); i++ )
+				trees.add(new ParseTree(roots.get(i)));
 		}
 
-		return noDups;
+		return new Vector<ParseTree>(trees);
 	}
 
 	/**************************************************************************
@@ -385,57 +408,26 @@ public class ParseTree
 	/**************************************************************************
 	 * PTNode
 	 *   This is a helper class. It is the nodes of the parse tree that we 
-	 *   will be constructing. It contains two methods for printing, and can 
-	 *   make deep copies of a node and all of its children.
+	 *   will be constructing. It contains two methods for printing. A node
+	 *   never changes once it is made, so it can be in many trees at once.
 	 *************************************************************************/
-	private class PTNode
+	static private class PTNode
 	{
-		Vector<PTNode> Children;
-		PTNode Parent;
-		String Value;
-		int id;
+		final PTNode[] Children;
+		final String Value;
 
-		public PTNode(String v, PTNode p)
-		{
-			Children = new Vector<PTNode>();
-			Parent = p;
-			Value = v;
-			id = ID++;
-		}
+		// The hash of the node and its children.
+		final int hash;
 
-		public PTNode(String v, PTNode p, int i)
+		public PTNode(String v, PTNode[] c)
 		{
-			Children = new Vector<PTNode>();
-			Parent = p;
+			Children = c;
 			Value = v;
-			id = i;
-		}
-
-		public void addChild(PTNode c)
-		{
-			Children.add(0, c);
-		}
 
-		public PTNode getChild(int i)
-		{
-			return (PTNode) Children.get(i);
-		}
-
-		/**********************************************************************
-		 * copy()
-		 *   This will make a new PTNode with the same value and a copy of 
-		 *   all of the children.
-		**********************************************************************/
-		public PTNode copy()
-		{
-			PTNode n = new PTNode(Value, null, id);
-			for ( int i = Children.size() - 1; i >= 0; i-- )
-			{
-				PTNode nc = ((PTNode) Children.get(i)).copy();
-				n.addChild(nc);
-				nc.Parent = n;
-			}
-			return n;
+			int h = v.hashCode();
+			for ( int i = 0; i < c.length; i++ )
+				h = 31 * h + c[i].hash;
+			hash = h;
 		}
 
 		/**********************************************************************
@@ -456,14 +448,11 @@ public class ParseTree
 		**********************************************************************/
 		public String prettyPrint(String offset)
 		{
-			StringBuffer out = new StringBuffer();
+			StringBuffer out = new StringBuffer();			
 			out.append(offset + Value + "\n");
 
-			for ( int i = 0; i < Children.size(); i++ )
-			{
-				PTNode c = (PTNode) Children.get(i);
-				out.append(c.prettyPrint(offset + tab));
-			}
+			for ( int i = 0; i < Children.length; i++ )
+				out.append(Children[i].prettyPrint(offset + tab));
 
 			return out.toString();
 		}
@@ -479,17 +468,16 @@ public class ParseTree
 		@Override
 		public String toString()
 		{
-			if ( Children.size() == 0 )
+			if ( Children.length == 0 )
 				return Value;
-			
+
 			StringBuffer out = new StringBuffer();			
 			out.append(Value + "<");
 
-			for ( int i = 0; i < Children.size() - 1; i++ )
-				out.append((PTNode) Children.get(i) + ",");
+			for ( int i = 0; i < Children.length - 1; i++ )
+				out.append(Children[i] + ",");
 
-			if ( Children.size() > 0 )
-				out.append((PTNode) Children.get(Children.size() - 1));
+			out.append(Children[Children.length - 1]);
 
 			out.append(">");
 			return out.toString();
@@ -500,34 +488,130 @@ public class ParseTree
 		 *   This is an over-ride of the equals function. It tests that 
 		 *   equivalence of the value at the node and the values of all the 
 		 *   children nodes recursively. Two nodes are only equal if they and 
-		 *   ALL of their childen are equal.
+		 *   ALL of their childen are equal. Shared subtrees are equal at once.
 		 *********************************************************************/
 		@Override
 		public boolean equals(Object obj)
 		{
+			if ( obj == this )
+				return true;
+
 			if ( obj == null )
 				return false;
-			
+
 			if ( obj.getClass() != this.getClass() )
 				return false;
 
 			PTNode pt = (PTNode) obj;
 
+			if ( this.hash != pt.hash )
+				return false;
+
 			if ( this.Value.compareTo(pt.Value) != 0 )
 				return false;
-			
-			if ( this.Children.size() != pt.Children.size() )
+
+			if ( this.Children.length != pt.Children.length )
 				return false;
 
-			for ( int i = 0; i < this.Children.size(); i++ )
+			for ( int i = 0; i < this.Children.length; i++ )
 			{
-				PTNode thisC = (PTNode) this.Children.get(i);
-				PTNode ptC = (PTNode) pt.Children.get(i);
-				if ( !thisC.equals(ptC) )
+				if ( !this.Children[i].equals(pt.Children[i]) )
 					return false;
 			}
 
 			return true;
 		}
+
+		/**********************************************************************
+		 * hashCode()
+		 *   This is an over-ride of the hashCode function. It agrees with 
+		 *   equals() by hashing the value and the children, and is worked
+		 *   out once when the node is made.
+		 *********************************************************************/
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+	}
+
+	/**************************************************************************
+	 * Children
+	 *   This is a helper class. It is a list of the children of a node that
+	 *   is being built, the last child first. A list never changes, so the
+	 *   lists that only differ in their last children share the rest.
+	 *************************************************************************/
+	static private class Children
+	{
+		PTNode last;
+		Children before;
+		int size;
+
+		Children(PTNode l, Children b)
+		{
+			last = l;
+			before = b;
+			size = ( b == null ) ? 1 : b.size + 1;
+		}
+
+		static PTNode[] toArray(Children list)
+		{
+			PTNode[] a = new PTNode[( list == null ) ? 0 : list.size];
+			for ( Children c = list; c != null; c = c.before )
+				a[c.size - 1] = c.last;
+			return a;
+		}
+	}
+
+	/**************************************************************************
+	 * Chain
+	 *   This is a helper class. It is the states of the nodes above a node
+	 *   over the same words, the nearest first.
+	 *************************************************************************/
+	static private class Chain
+	{
+		State state;
+		Chain above;
+
+		Chain(State s, Chain a)
+		{
+			state = s;
+			above = a;
+		}
+	}
+
+	/**************************************************************************
+	 * Context
+	 *   This is a helper class. It holds what the trees of one call to 
+	 *   getTree() share: the grammar, the charts, the trees found for each
+	 *   state, and the clock of the budget.
+	 *************************************************************************/
+	static private class Context
+	{
+		CompiledGrammar grammar;
+		Chart[] charts;
+
+		// The trees of the completed states that do not depend on what is
+		//  above them.
+		HashMap<State, List<PTNode>> found;
+
+		// Times the listing, or null if there is no budget.
+		ParseBudget.Clock clock;
+
+		Context(CompiledGrammar g, Chart[] c, ParseBudget b)
+		{
+			grammar = g;
+			charts = c;
+			found = new HashMap<State, List<PTNode>>();
+			if ( b != null )
+				clock = new ParseBudget.Clock(b);
+		}
+
+		// Throw if the budget was cancelled or the time is up.
+		void check()
+		{
+			if ( clock != null )
+				clock.tick();
+		}
 	}
 }
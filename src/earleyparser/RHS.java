@@ -3,7 +3,10 @@
  * project: EarleyParser with parse trees
  * 
  * RHS
- *   The RHS contains an array of terms and potentially has a dot.
+ *   The RHS contains an array of terms and potentially has a dot. The array
+ *   may be empty, for a rule that derives nothing.
+ *   A RHS may also have a probability, the chance that its LHS is rewritten
+ *   to it. It is 1 unless one is given.
  *   We chose the '@' character to represent the dot. If this becomes a problem, 
  *   the static DOT can be changed.
  * 
@@ -20,12 +23,21 @@ public class RHS
 	private boolean hasDot = false;
 	private int dot = -1;
 
+	// The probability of the rule.
+	private double probability;
+
 	// A static character that describes what we are currently using as the DOT.
 	private final static String DOT = "@";
 
 	public RHS(String[] t)
+	{
+		this(t, 1.0);
+	}
+
+	public RHS(String[] t, double p)
 	{
 		terms = t;
+		probability = p;
 		for ( int i = 0; i < terms.length; i++ )
 		{
 			if ( terms[i].compareTo(DOT) == 0 ) {
@@ -41,6 +53,11 @@ public class RHS
 		return terms;
 	}
 
+	public double getProbability()
+	{
+		return probability;
+	}
+
 	public String getPriorToDot()
 	{
 		if ( hasDot && dot > 0 )
@@ -92,7 +109,7 @@ public class RHS
 		for ( int i = 1; i < t.length; i++ )
 			t[i] = terms[i - 1];
 
-		return new RHS(t);
+		return new RHS(t, probability);
 	}
 
 	/**************************************************************************
@@ -109,7 +126,7 @@ public class RHS
 		
 		t[t.length - 1] = DOT;
 		
-		return new RHS(t);
+		return new RHS(t, probability);
 	}
 
 	/**************************************************************************
@@ -120,7 +137,7 @@ public class RHS
 	public RHS moveDot()
 	{
 		if ( isDotLast() )
-			return new RHS(terms);
+			return new RHS(terms, probability);
 		
 		String[] t = new String[terms.length];
 		for ( int i = 0; i < t.length; i++ )
@@ -134,7 +151,7 @@ public class RHS
 				t[i] = terms[i];
 		}
 		
-		return new RHS(t);
+		return new RHS(t, probability);
 	}
 
 	/**************************************************************************
@@ -171,14 +188,31 @@ public class RHS
 		return true;
 	}
 
+	/**************************************************************************
+	 * hashCode()
+	 *   This is an over-ride of the hashCode function. It agrees with equals()
+	 *   by hashing the terms, which include the dot when there is one.
+	 *************************************************************************/
+	@Override
+	public int hashCode()
+	{
+		int h = 0;
+		for ( int i = 0; i < terms.length; i++ )
+			h = 31 * h + terms[i].hashCode();
+		return h;
+	}
+
 	/**************************************************************************
 	 * toString()
 	 *   This is an over-ride of the toString function. It prints the the array
-	 *   of terms in a readable way.
+	 *   of terms in a readable way. An empty RHS prints as nothing.
 	 *************************************************************************/
 	@Override
 	public String toString()
 	{
+		if ( terms.length == 0 )
+			return "";
+
 		StringBuffer out = new StringBuffer();
 
 		for ( int i = 0; i < terms.length - 1; i++ )
@@ -0,0 +1,209 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * Semiring
+ *   A Semiring says what a ParseForest is worth, for ParseForest.evaluate().
+ *   A derivation is worth the product (times()) of the rules it uses, and a
+ *   node is worth the sum (plus()) of its derivations. The forest shares the
+ *   parts that derivations have in common, so this is worked out in time
+ *   polynomial in the length of the sentence, however many trees there are.
+ *
+ *   BOOLEAN   true if there is a derivation at all.
+ *   COUNT     the number of derivations, as a BigInteger. Unlike
+ *             ParseForest.getTreeCount() it does not cut cycles of unit or
+ *             empty rules, so evaluate() throws if a parse can go round one.
+ *   BEST      the probability of the most probable derivation.
+ *   INSIDE    the sum of the probabilities of the derivations.
+ *
+ *   Any other semiring can be given. Its plus() must be associative and
+ *   commutative with zero() as its identity, and its times() associative
+ *   with one() as its identity, distributing over plus().
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import java.math.BigInteger;
+
+public interface Semiring<T>
+{
+	T zero();
+
+	T one();
+
+	T plus(T a, T b);
+
+	T times(T a, T b);
+
+	/**************************************************************************
+	 * rule()
+	 *   What one use of the rule of the grammar is worth.
+	 *************************************************************************/
+	T rule(CompiledGrammar g, int rule);
+
+	/**************************************************************************
+	 * isSettled()
+	 *   True if a value that went from old to now has stopped changing. The
+	 *   values of nodes that depend on each other through cycles of unit or
+	 *   empty rules are worked out again until they settle.
+	 *************************************************************************/
+	boolean isSettled(T old, T now);
+
+	/**************************************************************************
+	 * isExact()
+	 *   True if values are worked out exactly, so a value only settles by 
+	 *   staying the same. Then every span settles in as many passes as it has
+	 *   nodes, or never: a cycle that still changes them after that, as one 
+	 *   does when counting, goes on for ever.
+	 *************************************************************************/
+	boolean isExact();
+
+	final static Semiring<Boolean> BOOLEAN = new Semiring<Boolean>() {
+		public Boolean zero()
+		{
+			return Boolean.FALSE;
+		}
+
+		public Boolean one()
+		{
+			return Boolean.TRUE;
+		}
+
+		public Boolean plus(Boolean a, Boolean b)
+		{
+			return a || b;
+		}
+
+		public Boolean times(Boolean a, Boolean b)
+		{
+			return a && b;
+		}
+
+		public Boolean rule(CompiledGrammar g, int rule)
+		{
+			return Boolean.TRUE;
+		}
+
+		public boolean isSettled(Boolean old, Boolean now)
+		{
+			return old.equals(now);
+		}
+
+		public boolean isExact()
+		{
+			return true;
+		}
+	};
+
+	final static Semiring<BigInteger> COUNT = new Semiring<BigInteger>() {
+		public BigInteger zero()
+		{
+			return BigInteger.ZERO;
+		}
+
+		public BigInteger one()
+		{
+			return BigInteger.ONE;
+		}
+
+		public BigInteger plus(BigInteger a, BigInteger b)
+		{
+			return a.add(b);
+		}
+
+		public BigInteger times(BigInteger a, BigInteger b)
+		{
+			return a.multiply(b);
+		}
+
+		public BigInteger rule(CompiledGrammar g, int rule)
+		{
+			return BigInteger.ONE;
+		}
+
+		public boolean isSettled(BigInteger old, BigInteger now)
+		{
+			return old.equals(now);
+		}
+
+		public boolean isExact()
+		{
+			return true;
+		}
+	};
+
+	final static Semiring<Double> BEST = new Semiring<Double>() {
+		public Double zero()
+		{
+			return 0.0;
+		}
+
+		public Double one()
+		{
+			return 1.0;
+		}
+
+		public Double plus(Double a, Double b)
+		{
+			return Math.max(a, b);
+		}
+
+		public Double times(Double a, Double b)
+		{
+			return a * b;
+		}
+
+		public Double rule(CompiledGrammar g, int rule)
+		{
+			return g.getProbability(rule);
+		}
+
+		public boolean isSettled(Double old, Double now)
+		{
+			return old.equals(now);
+		}
+
+		public boolean isExact()
+		{
+			return true;
+		}
+	};
+
+	final static Semiring<Double> INSIDE = new Semiring<Double>() {
+		public Double zero()
+		{
+			return 0.0;
+		}
+
+		public Double one()
+		{
+			return 1.0;
+		}
+
+		public Double plus(Double a, Double b)
+		{
+			return a + b;
+		}
+
+		public Double times(Double a, Double b)
+		{
+			return a * b;
+		}
+
+		public Double rule(CompiledGrammar g, int rule)
+		{
+			return g.getProbability(rule);
+		}
+
+		// The sum round a cycle is infinite; it is stopped once the change
+		//  is too small to matter.
+		public boolean isSettled(Double old, Double now)
+		{
+			return Math.abs(now - old) <= 1e-12 * Math.max(Math.abs(now), 1e-300);
+		}
+
+		public boolean isExact()
+		{
+			return false;
+		}
+	};
+}
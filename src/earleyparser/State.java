@@ -3,10 +3,22 @@
  * project: EarleyParser with parse trees
  * 
  * State
- *   The state is a LHS, a RHS, i and j that describe the section of the 
- *   sentence we are considering, and the sources of this state. The state is
- *   mostly a container class for all of the individual parts. It can compare 
- *   itself to other states and will print nicely.
+ *   The state is a dotted rule, i and j that describe the section of the 
+ *   sentence we are considering, and the back-pointers of this state. The 
+ *   dotted rule is a rule id of a CompiledGrammar and the position of the
+ *   dot in that rule's RHS, so a state holds no strings at all. The state is
+ *   mostly a container class for all of the individual parts. It can compare
+ *   itself to other states; the CompiledGrammar is needed to print it nicely.
+ * 
+ *   A back-pointer is one way the state was made by moving the dot over the
+ *   symbol before it: the state the dot was moved in (the predecessor) and
+ *   the completed state of the symbol (the child). The child is null if the
+ *   symbol was skipped as nullable; its empty derivations are the completed
+ *   states of the symbol in the same chart that span no words. Predicted 
+ *   states and scanned words have no back-pointers. The back-pointers are
+ *   kept in pairs in one array, and the same pair is never kept twice. A
+ *   state with many back-pointers also keeps a hash table of them, so that
+ *   finding out whether it has a pair does not take a look at every pair.
  * 
  *   If additional information needed to be associated with the state, this 
  *   would potentially be the place to add it.
@@ -14,41 +26,52 @@
  *****************************************************************************/
 package earleyparser;
 
-import java.util.Vector;
+import java.util.Arrays;
 
 public class State
 {
-	// The left-hand side non-terminal that led to this state.
-	private String lhs;
+	// The rule of the CompiledGrammar that led to this state.
+	private int rule;
 
-	// This will contain a 'dot'.
-	private RHS rhs;
+	// The position of the 'dot' in the RHS of the rule.
+	private int dot;
 
 	// Indices that describe the words being considered in the sentence.
 	private int i,  j;
 
-	// Contains the states that produced this one.
-	private Vector<State> srcs;
+	// The predecessor and child of every back-pointer, one after the other,
+	//  or null if there are none yet.
+	private State[] pointers;
+	private int pointerCount;
+
+	// An open hash table of the back-pointers, each by its index plus one,
+	//  or null while there are no more than LINEAR_POINTERS of them.
+	private int[] index;
+
+	final static private int LINEAR_POINTERS = 8;
 
-	public State(String lhs, RHS rhs, int i, int j, State src)
+	public State(int rule, int dot, int i, int j)
 	{
-		this.lhs = lhs;
-		this.rhs = rhs;
+		this.rule = rule;
+		this.dot = dot;
 		this.i = i;
 		this.j = j;
-		this.srcs = new Vector<State>();
-		if ( src != null )
-			this.srcs.add(src);
 	}
 
-	public String getLHS()
+	public State(int rule, int dot, int i, int j, State predecessor, State child)
+	{
+		this(rule, dot, i, j);
+		addBackPointer(predecessor, child);
+	}
+
+	public int getRule()
 	{
-		return lhs;
+		return rule;
 	}
 
-	public RHS getRHS()
+	public int getDot()
 	{
-		return rhs;
+		return dot;
 	}
 
 	public int getI()
@@ -61,38 +84,117 @@ public class State
 		return j;
 	}
 
-	public Vector<State> getSources()
+	public int getBackPointerCount()
+	{
+		return pointerCount;
+	}
+
+	/**************************************************************************
+	 * getPredecessor()
+	 *   Return the predecessor of the a-th back-pointer.
+	 *************************************************************************/
+	public State getPredecessor(int a)
+	{
+		return pointers[2 * a];
+	}
+
+	/**************************************************************************
+	 * getChild()
+	 *   Return the child of the a-th back-pointer, or null if the symbol 
+	 *   before the dot was skipped as nullable.
+	 *************************************************************************/
+	public State getChild(int a)
+	{
+		return pointers[2 * a + 1];
+	}
+
+	/**************************************************************************
+	 * addBackPointer()
+	 *   Add the back-pointer, unless the state already has it. Up to 
+	 *   LINEAR_POINTERS pairs are simply looked through; past that they are
+	 *   looked up in the hash table.
+	 *************************************************************************/
+	public void addBackPointer(State predecessor, State child)
 	{
-		return srcs;
+		if ( hasBackPointer(predecessor, child) )
+			return;
+
+		if ( pointers == null )
+			pointers = new State[2];
+		else if ( pointers.length == 2 * pointerCount )
+			pointers = Arrays.copyOf(pointers, 4 * pointerCount);
+
+		pointers[2 * pointerCount] = predecessor;
+		pointers[2 * pointerCount + 1] = child;
+		pointerCount++;
+
+		if ( pointerCount > LINEAR_POINTERS && 
+			 ( index == null || 2 * pointerCount > index.length ) )
+		{
+			index = new int[4 * Integer.highestOneBit(pointerCount)];
+			for ( int a = 0; a < pointerCount; a++ )
+				addToIndex(a);
+		}
+		else if ( index != null )
+			addToIndex(pointerCount - 1);
 	}
 
-	public String getPriorToDot()
+	private boolean hasBackPointer(State predecessor, State child)
 	{
-		return rhs.getPriorToDot();
+		if ( index == null )
+		{
+			for ( int a = 0; a < pointerCount; a++ )
+			{
+				if ( pointers[2 * a] == predecessor && pointers[2 * a + 1] == child )
+					return true;
+			}
+			return false;
+		}
+
+		int mask = index.length - 1;
+		for ( int h = hash(predecessor, child) & mask; index[h] != 0; h = ( h + 1 ) & mask )
+		{
+			int a = index[h] - 1;
+			if ( pointers[2 * a] == predecessor && pointers[2 * a + 1] == child )
+				return true;
+		}
+		return false;
 	}
 
-	public String getAfterDot()
+	private void addToIndex(int a)
 	{
-		return rhs.getAfterDot();
+		int mask = index.length - 1;
+		int h = hash(pointers[2 * a], pointers[2 * a + 1]) & mask;
+		while ( index[h] != 0 )
+			h = ( h + 1 ) & mask;
+		index[h] = a + 1;
 	}
 
-	public boolean isDotLast()
+	// The pairs are compared by identity, so they are hashed by it too.
+	static private int hash(State predecessor, State child)
 	{
-		return rhs.isDotLast();
+		int h = 31 * System.identityHashCode(predecessor) + 
+				System.identityHashCode(child);
+		return h ^ ( h >>> 16 );
 	}
 
-	public void addSources(State s)
+	/**************************************************************************
+	 * addBackPointers()
+	 *   Add the back-pointers of s that this state does not have yet.
+	 *************************************************************************/
+	public void addBackPointers(State s)
 	{
-		srcs.addAll(s.srcs);
+		for ( int a = 0; a < s.pointerCount; a++ )
+			addBackPointer(s.pointers[2 * a], s.pointers[2 * a + 1]);
 	}
 
 	@Override
 	/**************************************************************************
 	 * equals()
-	 *   This is an over-ride of the equals function. It tests that the LHS, 
-	 *   RHS, the i, and the j are equivalent. We do not test that the sources 
-	 *   are the same. During the forward and the backward parsing we do not 
-	 *   care if the sources are different.
+	 *   This is an over-ride of the equals function. It tests that the rule, 
+	 *   the dot, the i, and the j are equivalent. We do not test that the 
+	 *   back-pointers are the same. During the forward and the backward parsing we 
+	 *   do not care if the sources are different.
 	 *************************************************************************/
 	public boolean equals(Object o)
 	{
@@ -104,35 +206,33 @@ public class State
 		
 		State s = (State) o;
 
-		if ( lhs.compareTo(s.lhs) != 0 )
-			return false;
-		
-		if ( ! rhs.equals(s.rhs) )
-			return false;
-		
-		if ( i != s.i )
-			return false;
-		
-		if ( j != s.j )
-			return false;
+		return rule == s.rule && dot == s.dot && i == s.i && j == s.j;
+	}
 
-		return true;
+	/**************************************************************************
+	 * hashCode()
+	 *   This is an over-ride of the hashCode function. It uses the same parts
+	 *   of the state as equals() so that states can be kept in a hash index.
+	 *************************************************************************/
+	@Override
+	public int hashCode()
+	{
+		int h = rule;
+		h = 31 * h + dot;
+		h = 31 * h + i;
+		h = 31 * h + j;
+		return h;
 	}
 
 	/**************************************************************************
 	 * toString()
-	 *   This is an over-ride of the toString function. It prints the state in
-	 *   a way to make it more readable and useable during debugging.
+	 *   This is an over-ride of the toString function. Without the grammar 
+	 *   the state can only print its numbers; Chart.toString() prints the 
+	 *   rules by name.
 	 *************************************************************************/
 	@Override
 	public String toString()
 	{
-		StringBuffer out = new StringBuffer();
-
-		out.append(lhs + "\t-> ");
-		out.append(rhs);
-		out.append("\t[" + i + ", " + j + "]");
-
-		return out.toString();
+		return "rule " + rule + ", dot " + dot + "\t[" + i + ", " + j + "]";
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,161 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * TextGrammar
+ *   The TextGrammar is a Grammar read from a text file, or any Reader,
+ *   instead of being written out as a Java class. Each line holds the rules
+ *   of one LHS, with the alternatives separated by '|'. An alternative with
+ *   no terms is an empty rule. A LHS may appear on as many lines as needed,
+ *   which is how a large lexicon is usually written. Blank lines and lines
+ *   starting with '#' are skipped.
+ *
+ *   # The grammar of SimpleGrammar
+ *   S    -> NP VP
+ *   NP   -> NP PP | Noun
+ *   VP   -> Verb NP | VP PP
+ *   PP   -> Prep NP
+ *   Noun -> John | Mary | Denver
+ *   Verb -> called
+ *   Prep -> from
+ *
+ *   An alternative may end with its probability in square brackets, as in
+ *   "NP -> NP PP [0.2] | Noun [0.8]". It is 1 if none is given, and must 
+ *   be between 0 and 1.
+ *
+ *   There is no need to list the Parts of Speech. A LHS is a Part of Speech
+ *   if every one of its rules is a single term that is not the LHS of any
+ *   rule, that is, a word.
+ *
+ *   Reading a big text grammar and compiling it takes a while. Once it is
+ *   compiled, CompiledGrammar.save() writes a snapshot that loads much
+ *   faster, and an EarleyParser can be made from that directly.
+ *
+ *****************************************************************************/
+
+package earleyparser;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Vector;
+
+public class TextGrammar extends Grammar
+{
+	public TextGrammar(String fileName) throws IOException
+	{
+		this(new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
+	}
+
+	/**************************************************************************
+	 * The reader is read to the end and closed.
+	 *************************************************************************/
+	public TextGrammar(Reader in) throws IOException
+	{
+		super();
+
+		BufferedReader lines = new BufferedReader(in);
+		try
+		{
+			initRules(lines);
+		}
+		finally
+		{
+			lines.close();
+		}
+
+		initPOS();
+	}
+
+	// Read the rules, one LHS per line.
+	private void initRules(BufferedReader lines) throws IOException
+	{
+		HashMap<String, Vector<RHS>> found = new HashMap<String, Vector<RHS>>();
+		String line;
+		int number = 0;
+
+		while ( ( line = lines.readLine() ) != null )
+		{
+			number++;
+			line = line.trim();
+			if ( line.length() == 0 || line.startsWith("#") )
+				continue;
+
+			int arrow = line.indexOf("->");
+			String lhs = ( arrow < 0 ) ? "" : line.substring(0, arrow).trim();
+			if ( lhs.length() == 0 || lhs.indexOf(' ') >= 0 || lhs.indexOf('\t') >= 0 )
+				throw new IOException("Line " + number +
+					": expected a single LHS and '->' in \"" + line + "\"");
+
+			Vector<RHS> rhs = found.get(lhs);
+			if ( rhs == null )
+			{
+				rhs = new Vector<RHS>();
+				found.put(lhs, rhs);
+			}
+
+			String[] alternatives = line.substring(arrow + 2).split("\\|", -1);
+			for ( int a = 0; a < alternatives.length; a++ )
+			{
+				String terms = alternatives[a].trim();
+				double probability = 1.0;
+
+				if ( terms.endsWith("]") && terms.lastIndexOf('[') >= 0 )
+				{
+					int open = terms.lastIndexOf('[');
+					try
+					{
+						probability = Double.parseDouble(
+							terms.substring(open + 1, terms.length() - 1).trim());
+					}
+					catch ( NumberFormatException e )
+					{
+						throw new IOException("Line " + number + 
+							": bad probability in \"" + line + "\"");
+					}
+					if ( ! ( probability >= 0 && probability <= 1 ) )
+						throw new IOException("Line " + number + 
+							": probability not between 0 and 1 in \"" + line + "\"");
+					terms = terms.substring(0, open).trim();
+				}
+
+				if ( terms.length() == 0 )
+					rhs.add(new RHS(new String[0], probability));
+				else
+					rhs.add(new RHS(terms.split("\\s+"), probability));
+			}
+		}
+
+		Iterator<Map.Entry<String, Vector<RHS>>> it = found.entrySet().iterator();
+		while ( it.hasNext() )
+		{
+			Map.Entry<String, Vector<RHS>> e = it.next();
+			Rules.put(e.getKey(), e.getValue().toArray(new RHS[e.getValue().size()]));
+		}
+	}
+
+	// Every LHS whose rules are all single words is a Part of Speech.
+	private void initPOS()
+	{
+		Iterator<Map.Entry<String, RHS[]>> it = Rules.entrySet().iterator();
+		while ( it.hasNext() )
+		{
+			Map.Entry<String, RHS[]> e = it.next();
+			RHS[] rhs = e.getValue();
+
+			boolean words = true;
+			for ( int a = 0; a < rhs.length && words; a++ )
+			{
+				String[] terms = rhs[a].getTerms();
+				words = ( terms.length == 1 && ! Rules.containsKey(terms[0]) );
+			}
+
+			if ( words )
+				POS.add(e.getKey());
+		}
+	}
+}
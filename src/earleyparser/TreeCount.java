@@ -0,0 +1,255 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * TreeCount
+ *   The TreeCount counts the trees of a ParseForest that its TreeIterator
+ *   lists, without listing them. Like the iterator it leaves out every tree
+ *   in which a symbol node is below itself, so a sentence of a grammar with
+ *   cycles of unit or empty rules still has finitely many trees.
+ *
+ *   How many trees a node has then depends on the symbol nodes above it. A
+ *   node can only come back to a node above it over the same words, and
+ *   only to one it is in a cycle with, so the nodes over each span are
+ *   split into their strongly connected components first. A node that is
+ *   in no cycle has the same count wherever it is, and it is counted once.
+ *   A node in a cycle is counted once for each set of the nodes of its
+ *   cycle that are above it. Those sets are few for the short cycles of
+ *   real grammars.
+ *
+ *   The nodes are counted from the shortest span to the longest, as in
+ *   ForestValues, so counting only recurses through nodes over the same
+ *   words.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+class TreeCount
+{
+	// The count of every node that is in no cycle, by the node's index.
+	private BigInteger[] counts;
+
+	// The counts of the nodes in cycles, by the node and the nodes of its
+	//  cycle above it.
+	private HashMap<Key, BigInteger> cyclic;
+
+	// The nodes of the cycle of every node that is in one, by the node's
+	//  index, or null.
+	private BitSet[] cycle;
+
+	private BigInteger total;
+
+	TreeCount(ParseForest forest)
+	{
+		List<ParseForest.Node> nodes = forest.getNodes();
+		counts = new BigInteger[nodes.size()];
+		cyclic = new HashMap<Key, BigInteger>();
+		cycle = new BitSet[nodes.size()];
+		new Components(nodes.size()).findAll(nodes);
+
+		ArrayList<ArrayList<ParseForest.Node>> spans = ForestValues.bySpan(nodes);
+		for ( int a = 0; a < spans.size(); a++ )
+		{
+			ArrayList<ParseForest.Node> span = spans.get(a);
+			for ( int b = 0; b < span.size(); b++ )
+				count(span.get(b), new BitSet());
+		}
+
+		ParseForest.Node root = forest.getRoot();
+		total = ( root == null ) ? BigInteger.ZERO : count(root, new BitSet());
+	}
+
+	BigInteger get()
+	{
+		return total;
+	}
+
+	/**************************************************************************
+	 * count()
+	 *   Return the number of trees of the node n, below the symbol nodes
+	 *   whose indices are set in above. A symbol node that is above itself
+	 *   has none.
+	 *************************************************************************/
+	private BigInteger count(ParseForest.Node n, BitSet above)
+	{
+		if ( n == null || n.isWord() )
+			return BigInteger.ONE;
+
+		int index = n.getIndex();
+		if ( cycle[index] == null )
+		{
+			if ( counts[index] == null )
+				counts[index] = sum(n, new BitSet());
+			return counts[index];
+		}
+
+		if ( above.get(index) )
+			return BigInteger.ZERO;
+
+		// Only the nodes of its own cycle can be met again below n.
+		BitSet relevant = (BitSet) above.clone();
+		relevant.and(cycle[index]);
+
+		Key k = new Key(index, relevant);
+		BigInteger c = cyclic.get(k);
+		if ( c == null )
+		{
+			c = sum(n, relevant);
+			cyclic.put(k, c);
+		}
+		return c;
+	}
+
+	/**************************************************************************
+	 * sum()
+	 *   Add up the trees of the packed nodes of n. The children of a symbol
+	 *   node have it above them too.
+	 *************************************************************************/
+	private BigInteger sum(ParseForest.Node n, BitSet above)
+	{
+		BitSet below = above;
+		if ( ! n.isIntermediate() )
+		{
+			below = (BitSet) above.clone();
+			below.set(n.getIndex());
+		}
+
+		BigInteger sum = BigInteger.ZERO;
+		List<ParseForest.Packed> packed = n.getPacked();
+		for ( int a = 0; a < packed.size(); a++ )
+		{
+			ParseForest.Packed p = packed.get(a);
+			BigInteger left = count(p.getLeft(), below);
+			if ( left.signum() == 0 )
+				continue;
+			sum = sum.add(left.multiply(count(p.getRight(), below)));
+		}
+		return sum;
+	}
+
+	/**************************************************************************
+	 * Components
+	 *   This is a helper class. It finds the strongly connected components of
+	 *   the nodes, following only the children over the same words as their
+	 *   parents (Tarjan's algorithm), and marks the nodes of every component
+	 *   that has a cycle.
+	 *************************************************************************/
+	private class Components
+	{
+		private int[] order;
+		private int[] low;
+		private boolean[] onStack;
+		private ArrayList<ParseForest.Node> stack;
+		private int visited;
+
+		Components(int size)
+		{
+			order = new int[size];
+			low = new int[size];
+			onStack = new boolean[size];
+			stack = new ArrayList<ParseForest.Node>();
+		}
+
+		void findAll(List<ParseForest.Node> nodes)
+		{
+			for ( int a = 0; a < nodes.size(); a++ )
+			{
+				ParseForest.Node n = nodes.get(a);
+				if ( ! n.isWord() && order[n.getIndex()] == 0 )
+					visit(n);
+			}
+		}
+
+		private void visit(ParseForest.Node n)
+		{
+			int index = n.getIndex();
+			order[index] = low[index] = ++visited;
+			stack.add(n);
+			onStack[index] = true;
+
+			boolean loop = false;
+			List<ParseForest.Packed> packed = n.getPacked();
+			for ( int a = 0; a < packed.size(); a++ )
+			{
+				ParseForest.Node[] children = { packed.get(a).getLeft(),
+												packed.get(a).getRight() };
+				for ( int b = 0; b < children.length; b++ )
+				{
+					ParseForest.Node c = children[b];
+					if ( c == null || c.isWord() ||
+						 c.getI() != n.getI() || c.getJ() != n.getJ() )
+						continue;
+
+					int ci = c.getIndex();
+					if ( c == n )
+						loop = true;
+					if ( order[ci] == 0 )
+					{
+						visit(c);
+						low[index] = Math.min(low[index], low[ci]);
+					}
+					else if ( onStack[ci] )
+						low[index] = Math.min(low[index], order[ci]);
+				}
+			}
+
+			if ( low[index] != order[index] )
+				return;
+
+			// n is the first node of its component.
+			BitSet members = new BitSet();
+			ParseForest.Node m;
+			do
+			{
+				m = stack.remove(stack.size() - 1);
+				onStack[m.getIndex()] = false;
+				members.set(m.getIndex());
+			}
+			while ( m != n );
+
+			if ( loop || members.cardinality() > 1 )
+			{
+				for ( int a = members.nextSetBit(0); a >= 0; a = members.nextSetBit(a + 1) )
+					cycle[a] = members;
+			}
+		}
+	}
+
+	/**************************************************************************
+	 * Key
+	 *   This is a helper class. It is a node in a cycle and the nodes of its
+	 *   cycle above it.
+	 *************************************************************************/
+	static private class Key
+	{
+		int node;
+		BitSet above;
+
+		Key(int node, BitSet above)
+		{
+			this.node = node;
+			this.above = above;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if ( o == null || o.getClass() != this.getClass() )
+				return false;
+
+			Key k = (Key) o;
+			return node == k.node && above.equals(k.above);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * node + above.hashCode();
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * TreeIterator
+ *   The TreeIterator lists the parse trees of a ParseForest one at a time,
+ *   building each tree only when it is asked for. The time it takes to get
+ *   the first tree, or the first few, does not depend on how many trees the
+ *   forest holds.
+ *
+ *   A tree is a choice of one packed node at every ambiguous node met on a
+ *   walk down from the root. The choices are kept in the order the walk
+ *   meets them, and the next tree is found by moving the last choice that
+ *   has alternatives left on to its next alternative, like an odometer. The
+ *   walk is then repeated, making new choices from where the old ones end.
+ *   Every tree is listed exactly once.
+ *
+ *   If the grammar lets a symbol derive itself over the same words, a walk
+ *   can come back to a node it is already under. Such a choice would give an
+ *   infinite tree, so it is skipped.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+class TreeIterator implements Iterator<ParseTree>
+{
+	private ParseForest.Node root;
+
+	// The packed node chosen at each ambiguous node, and how many packed
+	//  nodes that node has, in the order the walk meets them.
+	private int[] choice;
+	private int[] limit;
+	private int count;
+
+	// How many of the choices the current walk has used.
+	private int used;
+
+	// The nodes above the current node of the walk.
+	private HashSet<ParseForest.Node> path;
+
+	private ParseTree next;
+	private boolean started;
+	private boolean done;
+
+	TreeIterator(ParseForest forest)
+	{
+		root = forest.getRoot();
+		choice = new int[16];
+		limit = new int[16];
+		path = new HashSet<ParseForest.Node>();
+		done = ( root == null );
+	}
+
+	public boolean hasNext()
+	{
+		if ( next == null && ! done )
+			next = advance();
+		return next != null;
+	}
+
+	public ParseTree next()
+	{
+		if ( ! hasNext() )
+			throw new NoSuchElementException();
+
+		ParseTree t = next;
+		next = null;
+		return t;
+	}
+
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**************************************************************************
+	 * advance()
+	 *   Find the next tree, or return null if there are no more. A walk that
+	 *   runs into a cycle gives no tree, and the next choice is tried.
+	 *************************************************************************/
+	private ParseTree advance()
+	{
+		while ( true )
+		{
+			if ( ! started )
+				started = true;
+			else if ( ! increment() )
+			{
+				done = true;
+				return null;
+			}
+
+			used = 0;
+			path.clear();
+			ParseTree t = symbolTree(root);
+
+			// Choices after the ones this walk used belong to an older walk.
+			count = used;
+
+			if ( t != null )
+				return t;
+		}
+	}
+
+	/**************************************************************************
+	 * increment()
+	 *   Move the last choice that has alternatives left on to its next
+	 *   alternative and forget the choices after it. Return false if every
+	 *   choice is on its last alternative.
+	 *************************************************************************/
+	private boolean increment()
+	{
+		for ( int p = count - 1; p >= 0; p-- )
+		{
+			if ( choice[p] + 1 < limit[p] )
+			{
+				choice[p]++;
+				count = p + 1;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**************************************************************************
+	 * choose()
+	 *   Return the packed node the current walk takes at the node n. A node
+	 *   the walk has not met before starts at its first packed node.
+	 *************************************************************************/
+	private ParseForest.Packed choose(ParseForest.Node n)
+	{
+		int size = n.getPacked().size();
+		if ( size == 1 )
+			return n.getPacked().get(0);
+
+		if ( used == count )
+		{
+			if ( count == choice.length )
+			{
+				choice = Arrays.copyOf(choice, count * 2);
+				limit = Arrays.copyOf(limit, count * 2);
+			}
+			choice[count] = 0;
+			limit[count] = size;
+			count++;
+		}
+
+		return n.getPacked().get(choice[used++]);
+	}
+
+	/**************************************************************************
+	 * symbolTree()
+	 *   Build the tree under a symbol node for the current choices. Return
+	 *   null if the walk runs into a node it is already under.
+	 *************************************************************************/
+	private ParseTree symbolTree(ParseForest.Node n)
+	{
+		if ( n.isWord() )
+			return new ParseTree(n.getSymbol());
+
+		if ( ! path.add(n) )
+			return null;
+
+		List<ParseTree> children = new ArrayList<ParseTree>();
+		boolean ok = addChildren(children, choose(n));
+		path.remove(n);
+
+		return ok ? new ParseTree(n.getSymbol(), children) : null;
+	}
+
+	/**************************************************************************
+	 * addChildren()
+	 *   Add the trees of the children of a packed node to the list, from left
+	 *   to right. An intermediate node on the left adds the children of the
+	 *   packed node chosen for it.
+	 *************************************************************************/
+	private boolean addChildren(List<ParseTree> children, ParseForest.Packed p)
+	{
+		ParseForest.Node left = p.getLeft();
+		if ( left != null )
+		{
+			if ( left.isIntermediate() )
+			{
+				if ( ! addChildren(children, choose(left)) )
+					return false;
+			}
+			else if ( ! addChild(children, left) )
+				return false;
+		}
+
+		if ( p.getRight() != null )
+			return addChild(children, p.getRight());
+
+		return true;
+	}
+
+	private boolean addChild(List<ParseTree> children, ParseForest.Node n)
+	{
+		ParseTree c = symbolTree(n);
+		if ( c == null )
+			return false;
+
+		children.add(c);
+		return true;
+	}
+}
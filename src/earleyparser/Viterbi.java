@@ -0,0 +1,168 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * Viterbi
+ *   The Viterbi works out, for every node of a ParseForest, the probability
+ *   of its most probable derivation (its Viterbi probability) and the sum of
+ *   the probabilities of all of its derivations (its inside probability).
+ *   The probability of a derivation is the product of the probabilities of
+ *   the rules it uses. At the root these are the probability of the best
+ *   tree and of the sentence.
+ *
+ *   A packed node is worth the product of its children, times the
+ *   probability of its rule when it belongs to a symbol node. A node is
+ *   worth the best of its packed nodes, or their sum. The children of a
+ *   node never span more words than the node, so the nodes are worked out
+ *   from the shortest span to the longest. Nodes over the same words can
+ *   depend on each other through unit and empty rules, so each span is
+ *   gone over again until nothing changes. A cycle never makes a derivation
+ *   more probable, so the best probabilities settle. The inside
+ *   probabilities are the ForestValues of the forest in Semiring.INSIDE.
+ *
+ *   The best packed node of every node is kept, so the best tree is built
+ *   by following them down from the root. A packed node is only chosen 
+ *   once all of its children have a choice, and only replaces the choice 
+ *   if it is strictly better. So even when rules of probability 0 make 
+ *   packed nodes tie, the choices never go round a cycle and the best 
+ *   tree is finite. The time taken is polynomial in
+ *   the length of the sentence, however many trees the forest holds.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class Viterbi
+{
+	private CompiledGrammar grammar;
+
+	// The best and the inside probability, and the best packed node, of
+	//  every node, indexed by the node's index.
+	private double[] best;
+	private ForestValues<Double> inside;
+	private ParseForest.Packed[] choice;
+
+	Viterbi(ParseForest forest)
+	{
+		grammar = forest.getGrammar();
+		List<ParseForest.Node> nodes = forest.getNodes();
+		best = new double[nodes.size()];
+		choice = new ParseForest.Packed[nodes.size()];
+
+		for ( int a = 0; a < nodes.size(); a++ )
+			if ( nodes.get(a).isWord() )
+				best[a] = 1;
+
+		ArrayList<ArrayList<ParseForest.Node>> spans = ForestValues.bySpan(nodes);
+		for ( int s = 0; s < spans.size(); s++ )
+		{
+			ArrayList<ParseForest.Node> span = spans.get(s);
+
+			boolean changed = true;
+			while ( changed )
+			{
+				changed = false;
+				for ( int a = 0; a < span.size(); a++ )
+					changed |= relaxBest(span.get(a));
+			}
+		}
+
+		inside = new ForestValues<Double>(forest, Semiring.INSIDE);
+	}
+
+	double getBest(ParseForest.Node n)
+	{
+		return best[n.getIndex()];
+	}
+
+	double getInside(ParseForest.Node n)
+	{
+		return inside.get(n);
+	}
+
+	/**************************************************************************
+	 * relaxBest()
+	 *   Take the best packed node of n with the probabilities known so far,
+	 *   among those whose children all have a choice. Return true if n got
+	 *   its first choice or its best probability went up.
+	 *************************************************************************/
+	private boolean relaxBest(ParseForest.Node n)
+	{
+		boolean changed = false;
+		List<ParseForest.Packed> packed = n.getPacked();
+		for ( int a = 0; a < packed.size(); a++ )
+		{
+			ParseForest.Packed p = packed.get(a);
+			if ( ! isChosen(p.getLeft()) || ! isChosen(p.getRight()) )
+				continue;
+
+			double v = weight(n, p) * value(best, p.getLeft())
+									* value(best, p.getRight());
+			if ( v > best[n.getIndex()] || choice[n.getIndex()] == null )
+			{
+				changed = true;
+				best[n.getIndex()] = v;
+				choice[n.getIndex()] = p;
+			}
+		}
+		return changed;
+	}
+
+	// True if the best tree under n is known: n is missing, a word, or has a
+	//  choice.
+	private boolean isChosen(ParseForest.Node n)
+	{
+		return n == null || n.isWord() || choice[n.getIndex()] != null;
+	}
+
+	/**************************************************************************
+	 * weight()
+	 *   The probability of the rule of a packed node of a symbol node. The
+	 *   packed nodes of an intermediate node are part of a rule that is
+	 *   counted at its symbol node, so they weigh 1.
+	 *************************************************************************/
+	private double weight(ParseForest.Node n, ParseForest.Packed p)
+	{
+		if ( n.isIntermediate() )
+			return 1;
+		return grammar.getProbability(p.getRule());
+	}
+
+	private static double value(double[] values, ParseForest.Node n)
+	{
+		if ( n == null )
+			return 1;
+		return values[n.getIndex()];
+	}
+
+	/**************************************************************************
+	 * getBestTree()
+	 *   Build the tree under the symbol node n that follows the best packed
+	 *   node of every node.
+	 *************************************************************************/
+	ParseTree getBestTree(ParseForest.Node n)
+	{
+		if ( n.isWord() )
+			return new ParseTree(n.getSymbol());
+
+		List<ParseTree> children = new ArrayList<ParseTree>();
+		addChildren(children, choice[n.getIndex()]);
+		return new ParseTree(n.getSymbol(), children);
+	}
+
+	private void addChildren(List<ParseTree> children, ParseForest.Packed p)
+	{
+		ParseForest.Node left = p.getLeft();
+		if ( left != null )
+		{
+			if ( left.isIntermediate() )
+				addChildren(children, choice[left.getIndex()]);
+			else
+				children.add(getBestTree(left));
+		}
+
+		if ( p.getRight() != null )
+			children.add(getBestTree(p.getRight()));
+	}
+}
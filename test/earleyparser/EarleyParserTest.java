@@ -0,0 +1,60 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * EarleyParserTest
+ *   Tests of the steps an EarleyParser counts, and of what it remembers of
+ *   the last sentence.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class EarleyParserTest
+{
+	// Three states of the first chart wait on N.
+	final static private String GRAMMAR =
+		"S -> N | N N | N N N\n" +
+		"N -> a\n";
+
+	private void scansOnce(EarleyParser.Storage storage) throws IOException
+	{
+		EarleyParser parser = new EarleyParser(new TextGrammar(new StringReader(GRAMMAR)));
+		parser.setStorage(storage);
+		parser.setCounting(true);
+
+		ParseContext c = parser.parse(new String[] { "a", "a" });
+		assertTrue(c.isAccepted());
+		assertEquals(2, c.getStats().getScans());
+	}
+
+	@Test
+	public void scansOnceWithStates() throws IOException
+	{
+		scansOnce(EarleyParser.Storage.STATES);
+	}
+
+	@Test
+	public void scansOnceWithColumns() throws IOException
+	{
+		scansOnce(EarleyParser.Storage.COLUMNS);
+	}
+
+	@Test
+	public void nothingParsedYet() throws IOException
+	{
+		EarleyParser parser = new EarleyParser(new TextGrammar(new StringReader(GRAMMAR)));
+		assertNull(parser.getCharts());
+		assertNull(parser.getForest());
+		assertNull(parser.getBestTree());
+		assertNull(parser.getExceeded());
+		assertEquals(0.0, parser.getProbability(), 0.0);
+	}
+}
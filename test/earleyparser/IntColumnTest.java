@@ -0,0 +1,37 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * IntColumnTest
+ *   Tests of the growth of an IntColumn.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class IntColumnTest
+{
+	@Test
+	public void growsAndKeepsValues()
+	{
+		IntColumn column = new IntColumn(false, 1);
+		for ( int a = 0; a < 1000; a++ )
+			column.set(a, a * 3);
+		for ( int a = 0; a < 1000; a++ )
+			assertEquals(a * 3, column.get(a));
+	}
+
+	@Test(timeout = 1000, expected = IllegalStateException.class)
+	public void stopsAtMaxCapacity()
+	{
+		new IntColumn(false, 1).set(IntColumn.MAX_CAPACITY, 1);
+	}
+
+	@Test(timeout = 1000, expected = IllegalStateException.class)
+	public void stopsAtLastIndex()
+	{
+		new IntColumn(true, 1).set(Integer.MAX_VALUE, 1);
+	}
+}
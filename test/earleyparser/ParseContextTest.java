@@ -0,0 +1,87 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * ParseContextTest
+ *   Tests of a ParseContext with a budget, as its words are pushed and
+ *   edited.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class ParseContextTest
+{
+	// The k-th chart of a sentence of words "a" holds 2k + 4 states.
+	final static private String CATALAN =
+		"S -> S S | Word\n" +
+		"Word -> a\n";
+
+	static private EarleyParser parser() throws IOException
+	{
+		return new EarleyParser(new TextGrammar(new StringReader(CATALAN)));
+	}
+
+	@Test
+	public void pausesAreNotTimed() throws Exception
+	{
+		ParseBudget budget = new ParseBudget();
+		budget.setTimeoutMillis(100);
+
+		ParseContext c = parser().begin(budget);
+		for ( int a = 0; a < 4; a++ )
+		{
+			Thread.sleep(150);
+			assertTrue(c.push("a"));
+		}
+		assertTrue(c.isAccepted());
+		assertNull(c.getExceeded());
+	}
+
+	@Test
+	public void editGoesOnAfterAStop() throws IOException
+	{
+		ParseBudget budget = new ParseBudget();
+		budget.setMaxStatesPerChart(12);
+
+		ParseContext c = parser().begin(budget);
+		for ( int a = 0; a < 8; a++ )
+			c.push("a");
+		assertFalse(c.isAccepted());
+		assertEquals(ParseBudget.Limit.STATES_PER_CHART, c.getExceeded());
+
+		// The 5th chart is the first with too many states.
+		assertTrue(c.delete(4, 4));
+		assertTrue(c.isAccepted());
+		assertNull(c.getExceeded());
+
+		// A 5th word stops it again, and removing any word goes on.
+		c.push("a");
+		assertFalse(c.isAccepted());
+		assertTrue(c.delete(0, 1));
+		assertTrue(c.isAccepted());
+	}
+
+	@Test
+	public void editAfterTheStopStaysStopped() throws IOException
+	{
+		ParseBudget budget = new ParseBudget();
+		budget.setMaxStatesPerChart(12);
+
+		ParseContext c = parser().begin(budget);
+		for ( int a = 0; a < 8; a++ )
+			c.push("a");
+
+		assertFalse(c.delete(6, 2));
+		assertFalse(c.isAccepted());
+		assertEquals(ParseBudget.Limit.STATES_PER_CHART, c.getExceeded());
+	}
+}
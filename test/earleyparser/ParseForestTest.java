@@ -0,0 +1,75 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * ParseForestTest
+ *   Tests that ParseForest.getTreeCount() counts the trees its iterator 
+ *   lists.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ParseForestTest
+{
+	static private ParseForest forest(String grammar, int n) throws IOException
+	{
+		EarleyParser parser = new EarleyParser(new TextGrammar(new StringReader(grammar)));
+		String[] sentence = new String[n];
+		Arrays.fill(sentence, "a");
+		return parser.parse(sentence).getForest();
+	}
+
+	static private void assertCount(long expected, ParseForest f)
+	{
+		int listed = 0;
+		for ( ParseTree t : f )
+			listed++;
+
+		assertEquals(expected, listed);
+		assertEquals(BigInteger.valueOf(expected), f.getTreeCount());
+	}
+
+	@Test
+	public void catalan() throws IOException
+	{
+		ParseForest f = forest("S -> S S | Word\nWord -> a\n", 10);
+		assertCount(4862, f);
+		assertEquals(f.getTreeCount(), f.evaluate(Semiring.COUNT));
+	}
+
+	@Test
+	public void unitCycle() throws IOException
+	{
+		// S -> A -> S would go round forever; only S -> W and S -> A -> W
+		//  are trees.
+		assertCount(2, forest("S -> A | W\nA -> S | W\nW -> a\n", 1));
+	}
+
+	@Test
+	public void emptyCycle() throws IOException
+	{
+		// Every tree but S -> A -> W has S over "a" below itself, next to an
+		//  empty S or under A.
+		assertCount(1, forest("S -> S S | A | \nA -> S | W\nW -> a\n", 1));
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void derivationsOfACycle() throws IOException
+	{
+		forest("S -> A | W\nA -> S | W\nW -> a\n", 1).evaluate(Semiring.COUNT);
+	}
+
+	@Test
+	public void noParse() throws IOException
+	{
+		assertCount(0, forest("S -> W W\nW -> a\n", 1));
+	}
+}
@@ -0,0 +1,70 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * ParseTreeTest
+ *   Tests of ParseTree.getTree() with a budget.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Vector;
+
+import org.junit.Test;
+
+public class ParseTreeTest
+{
+	// A sentence of n words "a" has as many trees as there are binary trees
+	//  with n leaves, the Catalan number C(n - 1).
+	final static private String CATALAN =
+		"S -> S S | Word\n" +
+		"Word -> a\n";
+
+	static private Chart[] parse(String grammar, int n) throws IOException
+	{
+		EarleyParser parser = new EarleyParser(new TextGrammar(new StringReader(grammar)));
+		String[] sentence = new String[n];
+		Arrays.fill(sentence, "a");
+		return parser.parse(sentence).getCharts();
+	}
+
+	@Test
+	public void treesWithinTheLimit() throws IOException
+	{
+		Chart[] charts = parse(CATALAN, 6);
+		ParseBudget budget = new ParseBudget();
+		budget.setMaxTrees(42);
+
+		CompiledGrammar g = new TextGrammar(new StringReader(CATALAN)).compile();
+		Vector<ParseTree> trees = ParseTree.getTree(g, charts, budget);
+		assertEquals(42, trees.size());
+		assertEquals(new HashSet<ParseTree>(ParseTree.getTree(g, charts)),
+					 new HashSet<ParseTree>(trees));
+	}
+
+	@Test(timeout = 10000)
+	public void treeLimitStopsEarly() throws IOException
+	{
+		// C(29) is about 10^15 trees.
+		Chart[] charts = parse(CATALAN, 30);
+		ParseBudget budget = new ParseBudget();
+		budget.setMaxTrees(10);
+
+		CompiledGrammar g = new TextGrammar(new StringReader(CATALAN)).compile();
+		try
+		{
+			ParseTree.getTree(g, charts, budget);
+			fail("The tree limit was not enforced");
+		}
+		catch ( BudgetExceededException e )
+		{
+			assertEquals(ParseBudget.Limit.TREES, e.getLimit());
+		}
+	}
+}
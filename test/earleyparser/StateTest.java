@@ -0,0 +1,59 @@
+/******************************************************************************
+ * project: EarleyParser with parse trees
+ *
+ * StateTest
+ *   Tests of the back-pointers of a State.
+ *
+ *****************************************************************************/
+package earleyparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class StateTest
+{
+	@Test
+	public void keepsEachBackPointerOnce()
+	{
+		State s = new State(0, 1, 0, 1);
+		State p = new State(0, 0, 0, 0);
+		State c = new State(1, 1, 0, 1);
+
+		s.addBackPointer(p, c);
+		s.addBackPointer(p, null);
+		s.addBackPointer(p, c);
+		s.addBackPointer(p, null);
+
+		assertEquals(2, s.getBackPointerCount());
+		assertSame(c, s.getChild(0));
+		assertSame(null, s.getChild(1));
+	}
+
+	@Test(timeout = 5000)
+	public void manyBackPointers()
+	{
+		// Looking through every pair for each new one would take some 10^10
+		//  comparisons here.
+		int n = 200000;
+		State s = new State(0, 2, 0, n);
+		State[] predecessors = new State[n];
+		State[] children = new State[n];
+		for ( int a = 0; a < n; a++ )
+		{
+			predecessors[a] = new State(0, 1, 0, a);
+			children[a] = new State(1, 1, a, n);
+			s.addBackPointer(predecessors[a], children[a]);
+		}
+		for ( int a = 0; a < n; a++ )
+			s.addBackPointer(predecessors[a], children[a]);
+
+		assertEquals(n, s.getBackPointerCount());
+		for ( int a = 0; a < n; a++ )
+		{
+			assertSame(predecessors[a], s.getPredecessor(a));
+			assertSame(children[a], s.getChild(a));
+		}
+	}
+}